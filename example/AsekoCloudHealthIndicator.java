@@ -0,0 +1,59 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.UnitList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the connection to the Aseko cloud as the "asekoCloud" health component: login,
+ * subscription socket, reconnect circuit and whether the unit list has loaded. It is
+ * informational only and not part of the liveness or readiness groups, because the app keeps
+ * serving cached data while the cloud is slow or unreachable. A restart would not help it.
+ */
+@Component
+public class AsekoCloudHealthIndicator implements HealthIndicator {
+
+    private final AuthService authService;
+    private final GraphQLSubscriptionClient subscriptionClient;
+    private final ReconnectSupervisor reconnectSupervisor;
+    private final UnitService unitService;
+
+    @Autowired
+    public AsekoCloudHealthIndicator(AuthService authService,
+                                     GraphQLSubscriptionClient subscriptionClient,
+                                     ReconnectSupervisor reconnectSupervisor,
+                                     UnitService unitService) {
+        this.authService = authService;
+        this.subscriptionClient = subscriptionClient;
+        this.reconnectSupervisor = reconnectSupervisor;
+        this.unitService = unitService;
+    }
+
+    @Override
+    public Health health() {
+        boolean authenticated = authService.isAuthenticated();
+        boolean connected = subscriptionClient.isConnected();
+        boolean circuitOpen = reconnectSupervisor.isCircuitOpen();
+        UnitList unitList = unitService.getUnitList();
+
+        Health.Builder builder;
+        if (circuitOpen) {
+            builder = Health.down();
+        } else if (authenticated && connected) {
+            builder = Health.up();
+        } else {
+            // Still logging in or (re)connecting
+            builder = Health.unknown();
+        }
+        return builder
+                .withDetail("authenticated", authenticated)
+                .withDetail("tokenExpiresAt", authService.getTokenExpiresAtMillis())
+                .withDetail("subscriptionConnected", connected)
+                .withDetail("reconnectFailures", reconnectSupervisor.getConsecutiveFailures())
+                .withDetail("circuitOpen", circuitOpen)
+                .withDetail("units", unitList != null ? unitList.units().size() : 0)
+                .build();
+    }
+}
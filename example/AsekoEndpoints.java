@@ -0,0 +1,81 @@
+package com.example.asekoflowmonitor.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+
+/**
+ * Base URLs of the Aseko cloud services. They default to production. Point them at a
+ * {@code FakeAsekoCloud} (or any other stand-in) to load-test without touching the real
+ * cloud:
+ *
+ * <pre>
+ * aseko.endpoints.auth-url=http://localhost:8181
+ * aseko.endpoints.api-url=http://localhost:8181
+ * aseko.endpoints.graphql-url=http://localhost:8181/graphql
+ * aseko.endpoints.graphql-ws-url=ws://localhost:8182/graphql
+ * </pre>
+ *
+ * An empty graphql-ws-url keeps the WebSocket URL from {@link AsekoConfig}.
+ */
+@Component
+public class AsekoEndpoints {
+
+    private static final Logger log = LoggerFactory.getLogger(AsekoEndpoints.class);
+
+    private final AsekoConfig asekoConfig;
+    private final String authUrl;
+    private final String apiUrl;
+    private final String graphqlUrl;
+    private final String graphqlWsUrl;
+
+    @Autowired
+    public AsekoEndpoints(AsekoConfig asekoConfig,
+                          @Value("${aseko.endpoints.auth-url:https://auth.aseko.acs.aseko.cloud}") String authUrl,
+                          @Value("${aseko.endpoints.api-url:https://api.acs.prod.aseko.cloud}") String apiUrl,
+                          @Value("${aseko.endpoints.graphql-url:https://graphql.acs.prod.aseko.cloud/graphql}") String graphqlUrl,
+                          @Value("${aseko.endpoints.graphql-ws-url:}") String graphqlWsUrl) {
+        this.asekoConfig = asekoConfig;
+        this.authUrl = stripTrailingSlash(authUrl);
+        this.apiUrl = stripTrailingSlash(apiUrl);
+        this.graphqlUrl = graphqlUrl;
+        this.graphqlWsUrl = graphqlWsUrl;
+        log.info("Aseko endpoints: auth={} api={} graphql={} graphql-ws={}",
+                this.authUrl, this.apiUrl, graphqlUrl, getGraphqlWsUrl());
+    }
+
+    public String getLoginUrl() {
+        return authUrl + "/auth/login";
+    }
+
+    public String getAuthMeUrl() {
+        return authUrl + "/auth/me";
+    }
+
+    public String getUserProfileUrl() {
+        return apiUrl + "/users/me";
+    }
+
+    public String getGraphqlUrl() {
+        return graphqlUrl;
+    }
+
+    public String getGraphqlWsUrl() {
+        return graphqlWsUrl != null && !graphqlWsUrl.isEmpty() ? graphqlWsUrl : asekoConfig.getGraphqlWsUrl();
+    }
+
+    /**
+     * Host of the GraphQL endpoint, used to size its connection pool route.
+     */
+    public URI getGraphqlUri() {
+        return URI.create(graphqlUrl);
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.asekoflowmonitor.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Names and tags of every meter the app records, in one place, so dashboards can rely on them.
+ * Meters used on the per-frame path are created once and cached here. With
+ * micrometer-registry-prometheus on the classpath, Spring Boot serves them all on
+ * /actuator/prometheus once that endpoint is exposed.
+ *
+ * <ul>
+ *     <li>{@code aseko.upstream.requests}: timer per upstream operation (login, UnitList,
+ *     UnitDetailStatusQuery, ...), tagged with outcome and whether it was part of a batch</li>
+ *     <li>{@code aseko.ws.frames}: counter of subscription frames by direction and type</li>
+ *     <li>{@code aseko.ws.frame.parse}: timer for decoding one received frame</li>
+ *     <li>{@code aseko.ws.reconnects}: counter of scheduled reconnect attempts</li>
+ *     <li>{@code aseko.auth.token.age}: time since the current token was issued</li>
+ *     <li>{@code aseko.unit_detail_cache.requests}: counter by result, with a hit ratio gauge</li>
+ *     <li>{@code aseko.broadcast.send}: timer for convertAndSend per topic</li>
+ *     <li>{@code aseko.pipeline.*}: update pipeline backlog and producer stalls</li>
+ * </ul>
+ */
+@Component
+public class AsekoMetrics {
+
+    private static final String[] FRAME_TYPES = {"data", "connection_init", "connection_ack", "start", "stop",
+            "error", "complete", "ka", "other"};
+
+    private final MeterRegistry registry;
+    private final Map<String, Counter> framesIn = new ConcurrentHashMap<>();
+    private final Map<String, Counter> framesOut = new ConcurrentHashMap<>();
+    private final Map<String, Timer> broadcastTimers = new ConcurrentHashMap<>();
+    private final Timer frameParse;
+    private final Counter reconnects;
+    private final Counter cacheHits;
+    private final Counter cacheStaleHits;
+    private final Counter cacheMisses;
+
+    @Autowired
+    public AsekoMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (String type : FRAME_TYPES) {
+            framesIn.put(type, frameCounter("in", type));
+            framesOut.put(type, frameCounter("out", type));
+        }
+        this.frameParse = Timer.builder("aseko.ws.frame.parse")
+                .description("Time to decode one received subscription frame")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.reconnects = Counter.builder("aseko.ws.reconnects")
+                .description("Reconnect attempts scheduled for the subscription socket")
+                .register(registry);
+        this.cacheHits = cacheCounter("hit");
+        this.cacheStaleHits = cacheCounter("stale");
+        this.cacheMisses = cacheCounter("miss");
+        Gauge.builder("aseko.unit_detail_cache.hit.ratio", this, AsekoMetrics::cacheHitRatio)
+                .description("Share of unit detail lookups served from the cache, stale copies included")
+                .register(registry);
+    }
+
+    /**
+     * Times an upstream call from now until the future completes.
+     */
+    public <T> CompletableFuture<T> timeUpstream(String operation, boolean batched, CompletableFuture<T> call) {
+        long start = System.nanoTime();
+        return call.whenComplete((result, error) -> recordUpstream(operation, batched, start, error == null));
+    }
+
+    public void recordUpstream(String operation, boolean batched, long startNanos, boolean success) {
+        Timer.builder("aseko.upstream.requests")
+                .description("Calls to the Aseko cloud, from request to decoded response")
+                .tag("operation", operation)
+                .tag("batched", Boolean.toString(batched))
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void frameReceived(String type) {
+        framesIn.getOrDefault(type, framesIn.get("other")).increment();
+    }
+
+    public void frameSent(String type) {
+        framesOut.getOrDefault(type, framesOut.get("other")).increment();
+    }
+
+    public void recordFrameParse(long nanos) {
+        frameParse.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void reconnectScheduled() {
+        reconnects.increment();
+    }
+
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public void cacheStaleHit() {
+        cacheStaleHits.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    /**
+     * The convertAndSend timer for a topic. Topics are a small fixed set, so each gets its own.
+     */
+    public Timer broadcastTimer(String topic) {
+        return broadcastTimers.computeIfAbsent(topic, t -> Timer.builder("aseko.broadcast.send")
+                .description("convertAndSend duration, serialization included")
+                .tag("topic", t)
+                .publishPercentiles(0.5, 0.99)
+                .register(registry));
+    }
+
+    public <T> void timeGauge(String name, String description, T owner, ToDoubleFunction<T> millis) {
+        TimeGauge.builder(name, owner, TimeUnit.MILLISECONDS, millis)
+                .description(description)
+                .register(registry);
+    }
+
+    public <T> void gauge(String name, String description, T owner, ToDoubleFunction<T> value) {
+        Gauge.builder(name, owner, value)
+                .description(description)
+                .register(registry);
+    }
+
+    public <T> void functionCounter(String name, String description, T owner, ToDoubleFunction<T> count) {
+        FunctionCounter.builder(name, owner, count)
+                .description(description)
+                .register(registry);
+    }
+
+    private Counter frameCounter(String direction, String type) {
+        return Counter.builder("aseko.ws.frames")
+                .description("Subscription socket frames")
+                .tag("direction", direction)
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private Counter cacheCounter(String result) {
+        return Counter.builder("aseko.unit_detail_cache.requests")
+                .description("Unit detail lookups by cache result")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private double cacheHitRatio() {
+        double hits = cacheHits.count() + cacheStaleHits.count();
+        double total = hits + cacheMisses.count();
+        return total > 0 ? hits / total : 0;
+    }
+}
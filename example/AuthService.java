@@ -1,6 +1,7 @@
 package com.example.asekoflowmonitor.service;
 
 import com.example.asekoflowmonitor.config.AsekoConfig;
+import com.example.asekoflowmonitor.config.AsekoEndpoints;
 import com.example.asekoflowmonitor.config.CredentialsConfig;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -8,21 +9,34 @@ import org.apache.http.client.CookieStore;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.cookie.Cookie;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,28 +44,61 @@ import java.util.regex.Pattern;
 public class AuthService {
     
     private final AsekoConfig asekoConfig;
+    private final AsekoEndpoints endpoints;
+    private final AsekoMetrics metrics;
     private final CredentialsConfig credentialsConfig;
     private final ObjectMapper objectMapper;
     private final CookieStore cookieStore = new BasicCookieStore();
     private final SimpMessagingTemplate messagingTemplate;
+    private final CloseableHttpClient httpClient;
     
-    private String authToken;
+    // Token and expiry are swapped together, so readers never pair a new token with an old expiry
+    private final AtomicReference<AuthToken> currentToken = new AtomicReference<>(AuthToken.NONE);
     private String refreshToken;
     private String userId;
-    private boolean isAuthenticated = false;
+    private volatile boolean isAuthenticated = false;
     
-    private JsonNode userProfile;
+    // Single-flight login: concurrent callers share the one login that is already running
+    private final AtomicReference<CompletableFuture<Boolean>> inFlightLogin = new AtomicReference<>();
+    private final ScheduledExecutorService tokenRefreshScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "aseko-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile ScheduledFuture<?> scheduledRefresh;
+    // Completes on the first successful login; startup work chains onto it instead of sleeping
+    private final CompletableFuture<Void> authenticated = new CompletableFuture<>();
+    
+    @Value("${aseko.auth.refresh-ahead-seconds:120}")
+    private long refreshAheadSeconds;
+    
+    @Value("${aseko.auth.fallback-token-ttl-seconds:900}")
+    private long fallbackTokenTtlSeconds;
+    
+    @Value("${aseko.auth.refresh-retry-seconds:30}")
+    private long refreshRetrySeconds;
+    
+    private volatile JsonNode userProfile;
+    
+    private static final long MIN_REFRESH_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(5);
     
     // Aseko Cloud specific constants
-    private static final String AUTH_ENDPOINT = "https://auth.aseko.acs.aseko.cloud/auth/login";
     private static final String CLOUD_ID = "01HXS50KTV7NRSVNHD617J4CKB"; // This might be user-specific
     
     @Autowired
-    public AuthService(AsekoConfig asekoConfig, CredentialsConfig credentialsConfig, SimpMessagingTemplate messagingTemplate) {
+    public AuthService(AsekoConfig asekoConfig, CredentialsConfig credentialsConfig, SimpMessagingTemplate messagingTemplate,
+                       CloseableHttpClient httpClient, AsekoEndpoints endpoints, AsekoMetrics metrics) {
         this.asekoConfig = asekoConfig;
+        this.endpoints = endpoints;
+        this.metrics = metrics;
+        metrics.timeGauge("aseko.auth.token.age", "Time since the current token was issued",
+                currentToken, ref -> ref.get().ageMillis());
+        metrics.timeGauge("aseko.auth.token.remaining", "Time until the current token expires",
+                currentToken, ref -> ref.get().remainingMillis());
         this.credentialsConfig = credentialsConfig;
         this.objectMapper = new ObjectMapper();
         this.messagingTemplate = messagingTemplate;
+        this.httpClient = httpClient;
     }
     
     // This method reads the password more safely
@@ -78,19 +125,105 @@ public class AuthService {
         System.out.println("Password available: " + (getCredentialsPassword() != null));
     }
     
+    /**
+     * Starts the first login once the application is serving, on the auth thread, so a slow or
+     * unreachable auth endpoint never holds up context startup. Dependants wait on whenAuthenticated().
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        tokenRefreshScheduler.execute(this::loginUntilAuthenticated);
+    }
+    
+    /**
+     * Completes once a login has succeeded. Already complete for every caller after the first login.
+     */
+    public CompletableFuture<Void> whenAuthenticated() {
+        // A copy, so a caller's timeout or cancel cannot complete the shared signal
+        return authenticated.copy();
+    }
+    
+    private void loginUntilAuthenticated() {
+        if (authenticated.isDone()) {
+            return;
+        }
+        try {
+            login();
+        } catch (Exception e) {
+            System.err.println("Initial login failed, retrying in " + refreshRetrySeconds + " s: " + e.getMessage());
+            if (!tokenRefreshScheduler.isShutdown()) {
+                tokenRefreshScheduler.schedule(this::loginUntilAuthenticated, refreshRetrySeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        tokenRefreshScheduler.shutdownNow();
+    }
+    
     public boolean isAuthenticated() {
         return isAuthenticated;
     }
     
+    /**
+     * Returns the cached token while it is still valid. Only logs in when there is no
+     * token yet or it has expired; refreshes ahead of expiry happen in the background.
+     */
     public String getAuthToken() {
-        if (authToken == null) {
-            try {
-                login();
-            } catch (Exception e) {
-                System.err.println("Failed to get auth token: " + e.getMessage());
-            }
+        AuthToken token = currentToken.get();
+        if (token.isValid()) {
+            return token.value();
         }
-        return authToken;
+        try {
+            login();
+        } catch (Exception e) {
+            System.err.println("Failed to get auth token: " + e.getMessage());
+        }
+        return currentToken.get().value();
+    }
+    
+    /**
+     * Non-blocking {@link #getAuthToken()}. A valid token is returned immediately; otherwise the
+     * login runs on the auth thread, so callers composing futures never wait on the auth endpoint.
+     * Completes with null if the login failed.
+     */
+    public CompletableFuture<String> getAuthTokenAsync() {
+        AuthToken token = currentToken.get();
+        if (token.isValid()) {
+            return CompletableFuture.completedFuture(token.value());
+        }
+        CompletableFuture<Boolean> running = inFlightLogin.get();
+        if (running != null) {
+            return running.handle((result, error) -> currentToken.get().value());
+        }
+        try {
+            return CompletableFuture.supplyAsync(this::getAuthToken, tokenRefreshScheduler);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new IOException("Auth service is shut down"));
+        }
+    }
+    
+    public long getTokenExpiresAtMillis() {
+        return currentToken.get().expiresAtMillis();
+    }
+    
+    /**
+     * Forces the next getAuthToken() call to log in again, e.g. after the cloud rejected the token.
+     */
+    public void invalidateToken() {
+        currentToken.updateAndGet(AuthToken::expired);
+    }
+    
+    /**
+     * Like {@link #invalidateToken()}, but only if {@code rejected} is still the current token, so
+     * requests that all failed with the same old token do not discard the one that replaced it.
+     */
+    public void invalidateToken(String rejected) {
+        currentToken.updateAndGet(token -> rejected != null && rejected.equals(token.value()) ? token.expired() : token);
+    }
+    
+    private boolean hasValidToken() {
+        return currentToken.get().isValid();
     }
     
     public List<Cookie> getCookies() {
@@ -98,20 +231,62 @@ public class AuthService {
     }
     
     public CloseableHttpClient getHttpClient() {
-        return HttpClients.custom()
-                .setDefaultCookieStore(cookieStore)
-                .build();
+        return httpClient;
+    }
+    
+    // Per-request context so the shared pooled client still records cookies in our own store
+    private HttpClientContext cookieContext() {
+        HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(cookieStore);
+        return context;
     }
     
+    /**
+     * Logs in against the Aseko auth endpoint. If a login is already running, this call
+     * waits for it and shares its result instead of issuing a second one.
+     */
     public boolean login() throws IOException {
+        CompletableFuture<Boolean> flight = new CompletableFuture<>();
+        CompletableFuture<Boolean> existing = inFlightLogin.compareAndExchange(null, flight);
+        if (existing != null) {
+            return awaitLogin(existing);
+        }
+        
+        long start = System.nanoTime();
+        try {
+            boolean result = performLogin();
+            metrics.recordUpstream("login", false, start, result);
+            flight.complete(result);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            metrics.recordUpstream("login", false, start, false);
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLogin.set(null);
+        }
+    }
+    
+    private boolean awaitLogin(CompletableFuture<Boolean> flight) throws IOException {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for login", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Login failed: " + cause.getMessage(), cause);
+        }
+    }
+    
+    private boolean performLogin() throws IOException {
         System.out.println("\n===== DIRECT LOGIN ATTEMPT =====");
         
         try {
-            // Create the HttpClient exactly like in the working test
-            CloseableHttpClient httpClient = HttpClients.createDefault();
-            
-            // Create HttpPost with the exact URL that works
-            HttpPost httpPost = new HttpPost("https://auth.aseko.acs.aseko.cloud/auth/login");
+            HttpPost httpPost = new HttpPost(endpoints.getLoginUrl());
             
             // Set all headers exactly as in the working test
             httpPost.setHeader("Accept", "application/json");
@@ -144,29 +319,33 @@ public class AuthService {
             httpPost.setEntity(entity);
             
             // Execute the request
-            CloseableHttpResponse response = httpClient.execute(httpPost);
+            CloseableHttpResponse response = httpClient.execute(httpPost, cookieContext());
             try {
                 int statusCode = response.getStatusLine().getStatusCode();
-                String responseBody = EntityUtils.toString(response.getEntity());
                 
                 System.out.println("Direct login response: " + statusCode);
                 
                 if (statusCode == 200) {
                     // Parse the token from the successful response
-                    JsonNode responseJson = objectMapper.readTree(responseBody);
-                    this.authToken = responseJson.path("token").asText();
+                    String token = JsonResponseDecoder.readField(objectMapper, response.getEntity(), "token", String.class);
+                    if (token == null || token.isEmpty()) {
+                        // Caching "" as a valid token would only fail every request until the fallback TTL ran out
+                        throw new IOException("Login response carried no token");
+                    }
+                    currentToken.set(new AuthToken(token, System.currentTimeMillis(), decodeExpiryMillis(token)));
                     this.isAuthenticated = true;
+                    scheduleProactiveRefresh();
+                    authenticated.complete(null);
                     
                     System.out.println("Login successful! Token: " + 
-                        (this.authToken.length() > 10 ? this.authToken.substring(0, 10) + "..." : this.authToken));
+                        (token.length() > 10 ? token.substring(0, 10) + "..." : token));
                 } else {
                     System.err.println("Login failed. Status: " + statusCode);
-                    System.err.println("Response: " + responseBody);
+                    System.err.println("Response: " + EntityUtils.toString(response.getEntity()));
                     throw new IOException("Login failed with status: " + statusCode);
                 }
             } finally {
                 response.close();
-                httpClient.close();
             }
         } catch (Exception e) {
             System.err.println("Login error: " + e.getMessage());
@@ -176,8 +355,8 @@ public class AuthService {
         
         System.out.println("===== DIRECT LOGIN ATTEMPT COMPLETE =====\n");
         
-        // After successful login, fetch user profile
-        if (isAuthenticated()) {
+        // After the first successful login, fetch user profile
+        if (isAuthenticated() && userProfile == null) {
             try {
                 fetchUserProfile();
             } catch (Exception e) {
@@ -188,29 +367,81 @@ public class AuthService {
         return isAuthenticated();
     }
     
+    /**
+     * Reads the "exp" claim from the JWT payload. Falls back to a fixed lifetime when the
+     * token is not a JWT or carries no expiry.
+     */
+    private long decodeExpiryMillis(String token) {
+        try {
+            String[] parts = token.split("\\.");
+            if (parts.length >= 2) {
+                JsonNode claims = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+                JsonNode exp = claims.path("exp");
+                if (exp.canConvertToLong()) {
+                    return exp.asLong() * 1000L;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Could not decode token expiry: " + e.getMessage());
+        }
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(fallbackTokenTtlSeconds);
+    }
+    
+    /**
+     * Schedules the next login refresh-ahead-seconds before expiry, but never earlier than half
+     * the token's remaining lifetime and never sooner than a few seconds, so short-lived tokens
+     * cannot turn the refresh into a login loop.
+     */
+    private void scheduleProactiveRefresh() {
+        long lifetime = currentToken.get().expiresAtMillis() - System.currentTimeMillis();
+        long delay = Math.max(lifetime - TimeUnit.SECONDS.toMillis(refreshAheadSeconds), lifetime / 2);
+        scheduleRefresh(Math.max(MIN_REFRESH_DELAY_MILLIS, delay));
+    }
+    
+    private void scheduleRefresh(long delayMillis) {
+        ScheduledFuture<?> previous = scheduledRefresh;
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        if (!tokenRefreshScheduler.isShutdown()) {
+            scheduledRefresh = tokenRefreshScheduler.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private void refreshInBackground() {
+        try {
+            System.out.println("Refreshing auth token ahead of expiry");
+            login();
+        } catch (Exception e) {
+            System.err.println("Background token refresh failed: " + e.getMessage());
+            // Keep trying while the current token is still usable; after that callers log in on demand
+            if (hasValidToken()) {
+                scheduleRefresh(TimeUnit.SECONDS.toMillis(refreshRetrySeconds));
+            }
+        }
+    }
+    
     private void fetchUserInfo() {
         try {
             System.out.println("Fetching user information...");
             
-            CloseableHttpClient httpClient = getHttpClient();
-            HttpGet httpGet = new HttpGet("https://auth.aseko.acs.aseko.cloud/auth/me");
+            HttpGet httpGet = new HttpGet(endpoints.getAuthMeUrl());
             
             // Set headers for user info request
             httpGet.setHeader("Accept", "application/json");
             httpGet.setHeader("Accept-Language", "en");
             httpGet.setHeader("Origin", "https://aseko.cloud");
             httpGet.setHeader("Referer", "https://aseko.cloud/");
-            httpGet.setHeader("Authorization", "Bearer " + authToken);
+            httpGet.setHeader("Authorization", "Bearer " + currentToken.get().value());
             httpGet.setHeader("X-App-Name", "pool-live");
             httpGet.setHeader("X-App-Version", "4.2.0");
             httpGet.setHeader("X-Mode", "production");
             
-            try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            try (CloseableHttpResponse response = httpClient.execute(httpGet, cookieContext())) {
                 int statusCode = response.getStatusLine().getStatusCode();
-                String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
                 
                 if (statusCode == 200) {
-                    JsonNode userInfo = objectMapper.readTree(responseBody);
+                    JsonNode userInfo = JsonResponseDecoder.readTree(objectMapper, response.getEntity());
                     JsonNode idNode = userInfo.path("id");
                     JsonNode nameNode = userInfo.path("name");
                     
@@ -223,6 +454,7 @@ public class AuthService {
                         System.out.println("Logged in as: " + nameNode.asText());
                     }
                 } else {
+                    EntityUtils.consumeQuietly(response.getEntity());
                     System.out.println("Warning: Could not fetch user info, status: " + statusCode);
                 }
             }
@@ -281,8 +513,8 @@ public class AuthService {
     private void fetchUserProfile() throws IOException {
         System.out.println("Fetching user profile...");
         
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpGet httpGet = new HttpGet("https://api.acs.prod.aseko.cloud/users/me");
+        try {
+            HttpGet httpGet = new HttpGet(endpoints.getUserProfileUrl());
             
             // Set headers
             httpGet.setHeader("Accept", "application/json");
@@ -290,15 +522,14 @@ public class AuthService {
             
             try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
                 int statusCode = response.getStatusLine().getStatusCode();
-                String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
                 
                 if (statusCode == 200) {
-                    JsonNode profile = objectMapper.readTree(responseBody);
+                    JsonNode profile = JsonResponseDecoder.readTree(objectMapper, response.getEntity());
                     setUserProfile(profile);
                     System.out.println("User profile fetched successfully");
                 } else {
                     System.err.println("Failed to fetch profile. Status: " + statusCode);
-                    System.err.println("Response: " + responseBody);
+                    System.err.println("Response: " + EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
                 }
             }
         } catch (Exception e) {
@@ -306,4 +537,25 @@ public class AuthService {
             throw new IOException("Failed to fetch user profile", e);
         }
     }
-} 
\ No newline at end of file
+    
+    // Immutable token plus its expiry; replaced as a whole on login and invalidation
+    private record AuthToken(String value, long issuedAtMillis, long expiresAtMillis) {
+        static final AuthToken NONE = new AuthToken(null, 0, 0);
+        
+        boolean isValid() {
+            return value != null && System.currentTimeMillis() < expiresAtMillis;
+        }
+        
+        AuthToken expired() {
+            return new AuthToken(value, issuedAtMillis, 0);
+        }
+        
+        double ageMillis() {
+            return value != null ? System.currentTimeMillis() - issuedAtMillis : Double.NaN;
+        }
+        
+        double remainingMillis() {
+            return value != null ? Math.max(0, expiresAtMillis - System.currentTimeMillis()) : 0;
+        }
+    }
+}
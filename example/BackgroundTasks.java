@@ -0,0 +1,41 @@
+package com.example.asekoflowmonitor.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared, bounded pool for background work that may block on I/O, such as startup steps and
+ * opening the subscription socket. Services chain onto futures with {@link #executor()} instead
+ * of spawning their own threads, so the thread count stays fixed however many tasks are queued.
+ */
+@Component
+public class BackgroundTasks {
+
+    private final ExecutorService executor;
+
+    @Autowired
+    public BackgroundTasks(@Value("${aseko.background.threads:4}") int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "aseko-background-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Executor executor() {
+        return executor;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Filter backwash state of a unit (BackwashStatusFragment).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BackwashStatus(
+        String id,
+        Boolean running,
+        String duration,
+        String elapsed,
+        Configuration configuration) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Configuration(Integer oncePerXDays, String start, String takes) {
+    }
+}
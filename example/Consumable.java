@@ -0,0 +1,24 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A LiquidConsumable (canister and tube) or ElectrolyzerConsumable (electrode); the parts
+ * that do not apply to the type are null.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Consumable(
+        @JsonProperty("__typename") String typename,
+        String type,
+        Part canister,
+        Part tube,
+        Part electrode) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Part(String id, Boolean hasWarning) {
+    }
+}
@@ -1,246 +1,216 @@
 package com.example.asekoflowmonitor.service;
 
 import com.example.asekoflowmonitor.config.AsekoConfig;
-import com.example.asekoflowmonitor.config.CredentialsConfig;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.handshake.ServerHandshake;
+import com.example.asekoflowmonitor.history.MeasurementRollup;
+import com.example.asekoflowmonitor.history.MeasurementStore;
+import com.example.asekoflowmonitor.model.FlowTransition;
+import com.example.asekoflowmonitor.model.Measurements;
+import com.example.asekoflowmonitor.model.Unit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
-import java.net.URI;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+/**
+ * The single owner of upstream unit updates. It opens the shared subscription connection,
+ * keeps one subscription per listed unit, and feeds every frame into the
+ * {@link UnitUpdatePipeline}. Cache invalidation, broadcast, history and flow status all
+ * consume from there.
+ */
 @Service
 public class DirectWebSocketService {
 
+    private static final Logger log = LoggerFactory.getLogger(DirectWebSocketService.class);
+
     private final AsekoConfig asekoConfig;
     private final AuthService authService;
-    private final ObjectMapper objectMapper;
-    private final SimpMessagingTemplate messagingTemplate;
-    private WebSocketClient client;
-    private AtomicBoolean flowStatus = new AtomicBoolean(false);
-    private Consumer<Boolean> flowStatusConsumer;
+    private final StompBroadcaster broadcaster;
+    private final UnitDetailCache unitDetailCache;
+    private final GraphQLSubscriptionClient subscriptionClient;
+    private final MeasurementStore measurementStore;
+    private final MeasurementRollup measurementRollup;
+    private final BackgroundTasks backgroundTasks;
+    private final ReconnectSupervisor reconnectSupervisor;
+    private final UnitUpdatePipeline pipeline;
+    private final BiConsumer<String, Unit> unitUpdateHandler = this::handleDataMessage;
+    private final MonitorStateStore stateStore;
+    private final FlowStateMachine flowStateMachine;
+    private final CopyOnWriteArrayList<Consumer<Boolean>> flowStatusListeners = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<Consumer<FlowTransition>> flowTransitionListeners = new CopyOnWriteArrayList<>();
+    private volatile Set<String> listedUnitIds = new HashSet<>();
+    // Aggregate flow status last reported when no unit is configured; guarded by this
+    private Boolean reportedAnyFlowing;
 
     @Autowired
     public DirectWebSocketService(AsekoConfig asekoConfig, 
                                  AuthService authService,
-                                 SimpMessagingTemplate messagingTemplate) {
+                                 StompBroadcaster broadcaster,
+                                 UnitDetailCache unitDetailCache,
+                                 GraphQLSubscriptionClient subscriptionClient,
+                                 MeasurementStore measurementStore,
+                                 MeasurementRollup measurementRollup,
+                                 BackgroundTasks backgroundTasks,
+                                 ReconnectSupervisor reconnectSupervisor,
+                                 UnitUpdatePipeline pipeline,
+                                 MonitorStateStore stateStore,
+                                 FlowStateMachine flowStateMachine) {
         this.asekoConfig = asekoConfig;
         this.authService = authService;
-        this.objectMapper = new ObjectMapper();
-        this.messagingTemplate = messagingTemplate;
+        this.broadcaster = broadcaster;
+        this.unitDetailCache = unitDetailCache;
+        this.subscriptionClient = subscriptionClient;
+        this.measurementStore = measurementStore;
+        this.measurementRollup = measurementRollup;
+        this.backgroundTasks = backgroundTasks;
+        this.reconnectSupervisor = reconnectSupervisor;
+        this.pipeline = pipeline;
+        this.stateStore = stateStore;
+        this.flowStateMachine = flowStateMachine;
+        
+        // Consumers of each update, in order; all run on the pipeline thread
+        pipeline.addHandler(update -> unitDetailCache.invalidate(update.unitId()));
+        pipeline.addHandler(update -> stateStore.recordUnit(update.unitId(), update.unit(), update.receivedAt()));
+        pipeline.addHandler(update -> broadcaster.publish("/topic/poolData", update.unitId(), update.unit()));
+        pipeline.addHandler(this::recordHistory);
+        pipeline.addHandler(this::updateFlowStatus);
     }
 
-    @PostConstruct
-    public void init() {
-        try {
-            // Try authentication first
-            authService.login();
-            
-            // Then give time for authentication to complete
-            Thread.sleep(2000);
-            
-            // Check if authentication was successful
-            if (authService.isAuthenticated()) {
-                System.out.println("Authentication successful, connecting to WebSocket...");
-                connectWebSocket(status -> {
-                    this.flowStatus.set(status);
-                    System.out.println("Flow status updated: " + status);
-                });
-            } else {
-                System.err.println("Cannot connect to WebSocket: Not authenticated");
+    /**
+     * The only place the shared subscription connection is opened. Runs after the context is
+     * ready and the first login succeeded, so startup never waits on the Aseko cloud.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        subscriptionClient.subscribe(asekoConfig.getUnitId(), unitUpdateHandler);
+        authService.whenAuthenticated().thenRunAsync(() -> {
+            log.info("Authentication successful, connecting to WebSocket");
+            if (!subscriptionClient.connect()) {
+                reconnectSupervisor.scheduleReconnect(subscriptionClient::connect);
             }
-        } catch (Exception e) {
-            System.err.println("Failed to initialize WebSocket: " + e.getMessage());
-            e.printStackTrace();
-        }
+        }, backgroundTasks.executor()).exceptionally(error -> {
+            log.error("Failed to initialize WebSocket: {}", error.getMessage());
+            return null;
+        });
     }
 
-    public void connectWebSocket(Consumer<Boolean> consumer) {
-        try {
-            String token = authService.getAuthToken();
-            this.flowStatusConsumer = consumer;
-            
-            System.out.println("Connecting directly to GraphQL WebSocket: " + asekoConfig.getGraphqlWsUrl());
-            
-            // Set up headers
-            Map<String, String> headers = new HashMap<>();
-            headers.put("Authorization", "Bearer " + token);
-            headers.put("Accept", "*/*");
-            headers.put("Accept-Language", "en-GB,en;q=0.9");
-            headers.put("Origin", "https://aseko.cloud");
-            headers.put("Referer", "https://aseko.cloud/");
-            headers.put("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36");
-            
-            this.client = new WebSocketClient(new URI(asekoConfig.getGraphqlWsUrl()), headers) {
-                @Override
-                public void onOpen(ServerHandshake handshake) {
-                    System.out.println("WebSocket connection established");
-                    System.out.println("HTTP Status: " + handshake.getHttpStatus());
-                    System.out.println("HTTP Status Message: " + handshake.getHttpStatusMessage());
-                    
-                    // Print all headers
-                    System.out.println("Headers:");
-                    for (Iterator<String> it = handshake.iterateHttpFields(); it.hasNext();) {
-                        String key = it.next();
-                        System.out.println("  " + key + ": " + handshake.getFieldValue(key));
-                    }
-                    
-                    // Now send the connection init message
-                    sendConnectionInit(token);
-                }
-
-                @Override
-                public void onMessage(String message) {
-                    try {
-                        System.out.println("WebSocket message received: " + message);
-                        JsonNode messageJson = objectMapper.readTree(message);
-                        String type = messageJson.path("type").asText();
-                        
-                        if ("connection_ack".equals(type)) {
-                            System.out.println("Connection acknowledged, sending subscription");
-                            sendSubscription();
-                        } else if ("data".equals(type)) {
-                            handleDataMessage(messageJson);
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Error processing WebSocket message: " + e.getMessage());
-                    }
-                }
-
-                @Override
-                public void onClose(int code, String reason, boolean remote) {
-                    System.out.println("WebSocket connection closed: " + reason);
-                }
+    /**
+     * Adds a consumer for flow status changes of the configured unit, or of "any unit is
+     * flowing" when none is configured. It is called once per change, not per frame. Does not
+     * touch the connection, which this service opens on its own once the application is ready.
+     */
+    public void addFlowStatusListener(Consumer<Boolean> listener) {
+        flowStatusListeners.addIfAbsent(listener);
+    }
 
-                @Override
-                public void onError(Exception ex) {
-                    System.err.println("WebSocket error: " + ex.getMessage());
-                }
-            };
-            
-            this.client.connect();
-            
-        } catch (Exception e) {
-            System.err.println("Error connecting to WebSocket: " + e.getMessage());
-            e.printStackTrace();
-        }
+    /**
+     * Adds a consumer for confirmed flow transitions of every subscribed unit. Listeners run on
+     * the pipeline thread.
+     */
+    public void addFlowTransitionListener(Consumer<FlowTransition> listener) {
+        flowTransitionListeners.addIfAbsent(listener);
     }
     
-    private void sendConnectionInit(String token) {
-        try {
-            System.out.println("Sending connection init message");
-            
-            ObjectNode initMessage = objectMapper.createObjectNode();
-            initMessage.put("type", "connection_init");
-            
-            ObjectNode payload = objectMapper.createObjectNode();
-            ObjectNode headers = objectMapper.createObjectNode();
-            headers.put("Authorization", "Bearer " + token);
-            headers.put("X-App-Name", "pool-live");
-            headers.put("X-App-Version", "4.2.0");
-            headers.put("X-Mode", "production");
-            headers.put("X-Cloud", asekoConfig.getCloudId());
-            
-            payload.set("headers", headers);
-            initMessage.set("payload", payload);
-            
-            String initMessageString = objectMapper.writeValueAsString(initMessage);
-            System.out.println("Connection init message: " + initMessageString);
-            client.send(initMessageString);
-            
-        } catch (Exception e) {
-            System.err.println("Error sending connection init: " + e.getMessage());
+    /**
+     * Keeps one subscription per unit in the unit list on the shared connection, starting
+     * subscriptions for new units and stopping them for units that disappeared. A unit that
+     * disappeared no longer counts towards the "any unit is flowing" status.
+     */
+    @EventListener
+    public void onUnitListUpdated(UnitListUpdatedEvent event) {
+        Set<String> currentUnitIds = new HashSet<>();
+        for (Unit unit : event.getUnitList().units()) {
+            String unitId = unit.id();
+            if (unitId != null && !unitId.isEmpty()) {
+                currentUnitIds.add(unitId);
+                subscriptionClient.subscribe(unitId, unitUpdateHandler);
+            }
+        }
+        
+        boolean forgotFlowState = false;
+        for (String unitId : listedUnitIds) {
+            if (!currentUnitIds.contains(unitId) && !unitId.equals(asekoConfig.getUnitId())) {
+                subscriptionClient.unsubscribe(unitId);
+                forgotFlowState |= flowStateMachine.forget(unitId);
+            }
+        }
+        listedUnitIds = currentUnitIds;
+        if (forgotFlowState && !hasConfiguredUnit()) {
+            reportAnyFlowing();
         }
     }
     
-    private void sendSubscription() {
-        try {
-            System.out.println("Sending subscription message");
-            
-            ObjectNode subscriptionMessage = objectMapper.createObjectNode();
-            subscriptionMessage.put("id", "1");
-            subscriptionMessage.put("type", "start");
-            
-            ObjectNode payload = objectMapper.createObjectNode();
-            payload.put("query", 
-                "subscription UnitUpdates($unitId: String!) {\n" +
-                "  unit(id: $unitId) {\n" +
-                "    id\n" +
-                "    measurements {\n" +
-                "      ph\n" +
-                "      rx\n" +
-                "      cl\n" +
-                "      temperature\n" +
-                "      waterflow\n" +
-                "    }\n" +
-                "    variables {\n" +
-                "      ph_setpoint\n" +
-                "      rx_setpoint\n" +
-                "      cl_setpoint\n" +
-                "    }\n" +
-                "    dosing {\n" +
-                "      ph_minus\n" +
-                "      cl\n" +
-                "      floc\n" +
-                "    }\n" +
-                "  }\n" +
-                "}"
-            );
-            
-            ObjectNode variables = objectMapper.createObjectNode();
-            variables.put("unitId", asekoConfig.getUnitId());
-            payload.set("variables", variables);
-            
-            subscriptionMessage.set("payload", payload);
-            
-            client.send(objectMapper.writeValueAsString(subscriptionMessage));
-            
-        } catch (Exception e) {
-            System.err.println("Error sending subscription: " + e.getMessage());
-        }
+    // Runs on the socket reader thread: stamp and hand off, nothing else. Keyed by the
+    // subscription's unit id, since the frame payload may omit its own
+    private void handleDataMessage(String unitId, Unit unit) {
+        pipeline.publish(unitId, System.currentTimeMillis(), unit);
     }
     
-    private void handleDataMessage(JsonNode message) {
-        try {
-            JsonNode data = message.path("payload").path("data");
-            if (!data.isMissingNode()) {
-                JsonNode unit = data.path("unit");
-                if (!unit.isMissingNode()) {
-                    // Forward the complete unit data to clients
-                    messagingTemplate.convertAndSend("/topic/poolData", unit);
-                    
-                    JsonNode measurements = unit.path("measurements");
-                    if (!measurements.isMissingNode()) {
-                        JsonNode waterflow = measurements.path("waterflow");
-                        if (!waterflow.isMissingNode()) {
-                            double waterflowValue = waterflow.asDouble();
-                            boolean isFlowing = waterflowValue > 0;
-                            
-                            System.out.println("Waterflow value: " + waterflowValue + ", Flow status: " + isFlowing);
-                            
-                            if (flowStatusConsumer != null) {
-                                flowStatusConsumer.accept(isFlowing);
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error processing data message: " + e.getMessage());
+    private void recordHistory(UnitUpdatePipeline.UnitUpdate update) {
+        // Keep every measurement, not just the waterflow flag
+        Measurements measurements = update.unit().measurements();
+        measurementStore.record(update.unitId(), update.receivedAt(), measurements);
+        measurementRollup.record(update.unitId(), update.receivedAt(), measurements);
+    }
+    
+    private void updateFlowStatus(UnitUpdatePipeline.UnitUpdate update) {
+        Measurements measurements = update.unit().measurements();
+        if (measurements == null || measurements.waterflow() == null) {
+            return;
+        }
+        log.debug("frame unit={} waterflow={}", update.unitId(), measurements.waterflow());
+
+        // Every frame carries the flow value; downstream only hears about confirmed transitions
+        FlowTransition transition = flowStateMachine.observe(update.unitId(), measurements.waterflow(), update.receivedAt());
+        if (transition == null) {
+            return;
+        }
+        log.info("Flow transition unit={} flowing={} changedAt={} previousDurationMs={} waterflow={}",
+                transition.unitId(), transition.flowing(), transition.changedAt(),
+                transition.previousDurationMillis(), transition.waterflow());
+        for (Consumer<FlowTransition> listener : flowTransitionListeners) {
+            listener.accept(transition);
+        }
+
+        // Flow status tracks the configured unit; without one it is "any unit is flowing",
+        // so transitions of different units cannot overwrite each other
+        if (!hasConfiguredUnit()) {
+            reportAnyFlowing();
+        } else if (asekoConfig.getUnitId().equals(update.unitId())) {
+            reportFlowStatus(transition.flowing());
+        }
+    }
+
+    private boolean hasConfiguredUnit() {
+        String configuredUnitId = asekoConfig.getUnitId();
+        return configuredUnitId != null && !configuredUnitId.isEmpty();
+    }
+
+    // Called from the pipeline thread on transitions and from unit list refreshes
+    private synchronized void reportAnyFlowing() {
+        boolean flowing = flowStateMachine.anyFlowing();
+        if (reportedAnyFlowing != null && reportedAnyFlowing == flowing) {
+            return;
+        }
+        reportedAnyFlowing = flowing;
+        reportFlowStatus(flowing);
+    }
+
+    private void reportFlowStatus(boolean flowing) {
+        stateStore.setFlowStatus(flowing);
+        for (Consumer<Boolean> listener : flowStatusListeners) {
+            listener.accept(flowing);
         }
     }
     
     public boolean getFlowStatus() {
-        return flowStatus.get();
+        return stateStore.current().flowStatus();
     }
 } 
\ No newline at end of file
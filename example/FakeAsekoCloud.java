@@ -0,0 +1,504 @@
+package com.example.asekoflowmonitor.fake;
+
+import com.example.asekoflowmonitor.service.LogSampler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the Aseko cloud for load and soak tests. It serves the same endpoints the app
+ * uses:
+ * <ul>
+ *     <li>/auth/login, /auth/me and /users/me on the HTTP port;</li>
+ *     <li>the UnitList, UnitDetailStatusQuery, UnitDetail and UnitQuery operations on /graphql,
+ *     including array batches and persisted queries;</li>
+ *     <li>a graphql-ws UnitUpdates stream on the WebSocket port.</li>
+ * </ul>
+ * Every unit's measurements follow a random walk, and each subscribed unit gets one frame per
+ * tick.
+ *
+ * <p>{@link Settings} controls the number of units, frame rate, response latency and injected
+ * faults: HTTP 503s, dropped frames and periodic disconnects. Start it from
+ * {@link FakeAsekoCloudConfig} with the "fake-cloud" profile, embed it in a test harness, or
+ * run {@link #main} next to the app.
+ */
+public class FakeAsekoCloud {
+
+    private static final Logger log = LoggerFactory.getLogger(FakeAsekoCloud.class);
+    private static final String UNIT_ID_PREFIX = "fake-unit-";
+    private static final String SERIAL_PREFIX = "FAKE";
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<FakeUnit> units;
+    private final Map<String, FakeUnit> unitsById = new ConcurrentHashMap<>();
+    private final Map<String, FakeUnit> unitsBySerial = new ConcurrentHashMap<>();
+    private final Set<String> registeredQueryHashes = ConcurrentHashMap.newKeySet();
+    private final AtomicLong requestsServed = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final SplittableRandom frameRandom = new SplittableRandom(42);
+    // Request, tick and frame failures repeat at the load rate; log each kind once per interval
+    private final LogSampler errors = new LogSampler(10, TimeUnit.SECONDS);
+
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+    private UpdateStreamServer streamServer;
+    private ScheduledExecutorService scheduler;
+
+    public FakeAsekoCloud(Settings settings) {
+        this.settings = settings;
+        List<FakeUnit> created = new ArrayList<>(settings.units());
+        for (int i = 1; i <= settings.units(); i++) {
+            FakeUnit unit = new FakeUnit(String.format("%s%04d", UNIT_ID_PREFIX, i), String.format("%s%04d", SERIAL_PREFIX, i),
+                    "Pool " + i, frameRandom);
+            created.add(unit);
+            unitsById.put(unit.id, unit);
+            unitsBySerial.put(unit.serialNumber, unit);
+        }
+        this.units = Collections.unmodifiableList(created);
+    }
+
+    public void start() throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        httpExecutor = Executors.newFixedThreadPool(settings.httpThreads(), r -> {
+            Thread thread = new Thread(r, "fake-aseko-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer = HttpServer.create(new InetSocketAddress(settings.httpPort()), 256);
+        httpServer.setExecutor(httpExecutor);
+        httpServer.createContext("/auth/login", exchange -> handle(exchange, this::login));
+        httpServer.createContext("/auth/me", exchange -> handle(exchange, this::authMe));
+        httpServer.createContext("/users/me", exchange -> handle(exchange, this::userProfile));
+        httpServer.createContext("/graphql", exchange -> handle(exchange, this::graphql));
+        httpServer.start();
+
+        streamServer = new UpdateStreamServer(new InetSocketAddress(settings.wsPort()));
+        streamServer.setReuseAddr(true);
+        streamServer.start();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fake-aseko-frames");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickNanos = (long) (TimeUnit.SECONDS.toNanos(1) / settings.frameRateHz());
+        scheduler.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        if (settings.disconnectEverySeconds() > 0) {
+            scheduler.scheduleAtFixedRate(this::disconnectAll, settings.disconnectEverySeconds(),
+                    settings.disconnectEverySeconds(), TimeUnit.SECONDS);
+        }
+
+        log.info("Fake Aseko cloud serving {} units at {} Hz on {} and {}",
+                units.size(), settings.frameRateHz(), getHttpUrl(), getWsUrl());
+    }
+
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (streamServer != null) {
+            try {
+                streamServer.stop(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (httpExecutor != null) {
+            httpExecutor.shutdownNow();
+        }
+        log.info("Fake Aseko cloud stopped after {} requests and {} frames", requestsServed.get(), framesSent.get());
+    }
+
+    public String getHttpUrl() {
+        return "http://localhost:" + settings.httpPort();
+    }
+
+    public String getWsUrl() {
+        return "ws://localhost:" + settings.wsPort() + "/graphql";
+    }
+
+    public long getRequestsServed() {
+        return requestsServed.get();
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    // ---------------------------------------------------------------- HTTP
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            long latency = settings.latencyMs() + (settings.latencyJitterMs() > 0
+                    ? ThreadLocalRandom.current().nextLong(settings.latencyJitterMs() + 1) : 0);
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            if (settings.httpErrorRate() > 0 && ThreadLocalRandom.current().nextDouble() < settings.httpErrorRate()) {
+                respond(exchange, 503, "{\"message\":\"Injected fault\"}".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            JsonNode request = null;
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] body = in.readAllBytes();
+                if (body.length > 0) {
+                    request = objectMapper.readTree(body);
+                }
+            }
+            respond(exchange, 200, objectMapper.writeValueAsBytes(handler.handle(request)));
+            requestsServed.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            long suppressed = errors.tryAcquire("request");
+            if (suppressed >= 0) {
+                log.warn("Fake Aseko cloud failed on {}: {} (suppressed={})", exchange.getRequestURI(), e.getMessage(), suppressed);
+            }
+            respond(exchange, 500, new byte[0]);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private JsonNode login(JsonNode request) {
+        long expiresAt = System.currentTimeMillis() / 1000 + settings.tokenTtlSeconds();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String token = encoder.encodeToString("{\"alg\":\"none\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8))
+                + "." + encoder.encodeToString(("{\"sub\":\"fake-user\",\"exp\":" + expiresAt + "}").getBytes(StandardCharsets.UTF_8))
+                + ".fake";
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("token", token);
+        return response;
+    }
+
+    private JsonNode authMe(JsonNode request) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("id", "fake-user");
+        response.put("name", "Fake User");
+        return response;
+    }
+
+    private JsonNode userProfile(JsonNode request) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("id", "fake-user");
+        response.put("email", "fake-user@example.com");
+        response.put("firstName", "Fake");
+        response.put("lastName", "User");
+        return response;
+    }
+
+    private JsonNode graphql(JsonNode request) {
+        if (request != null && request.isArray()) {
+            ArrayNode responses = objectMapper.createArrayNode();
+            request.forEach(operation -> responses.add(execute(operation)));
+            return responses;
+        }
+        return execute(request);
+    }
+
+    private JsonNode execute(JsonNode operation) {
+        if (operation == null) {
+            return error("Empty request", null);
+        }
+        String hash = operation.path("extensions").path("persistedQuery").path("sha256Hash").asText(null);
+        if (operation.hasNonNull("query")) {
+            if (hash != null) {
+                registeredQueryHashes.add(hash);
+            }
+        } else if (hash == null || !registeredQueryHashes.contains(hash)) {
+            return error("PersistedQueryNotFound", "PERSISTED_QUERY_NOT_FOUND");
+        }
+
+        JsonNode variables = operation.path("variables");
+        String operationName = operation.path("operationName").asText("");
+        ObjectNode data = objectMapper.createObjectNode();
+        switch (operationName) {
+            case "UnitList":
+                data.set("units", unitPage(variables.path("after").asText(null), variables.path("first").asInt(15)));
+                break;
+            case "UnitDetailStatusQuery":
+            case "UnitDetail":
+                data.set("unitBySerialNumber", unitDetail(variables.path("sn").asText("")));
+                break;
+            case "UnitQuery":
+                FakeUnit unit = unitsById.get(variables.path("unitId").asText(""));
+                data.set("unit", unit != null ? unit.toUnitUpdateNode(objectMapper) : null);
+                break;
+            default:
+                return error("Unknown operation " + operationName, "GRAPHQL_VALIDATION_FAILED");
+        }
+        ObjectNode response = objectMapper.createObjectNode();
+        response.set("data", data);
+        return response;
+    }
+
+    private ObjectNode unitPage(String after, int first) {
+        int from = 0;
+        if (after != null && !after.isEmpty()) {
+            try {
+                from = Integer.parseInt(after);
+            } catch (NumberFormatException e) {
+                from = units.size();
+            }
+        }
+        int to = Math.min(units.size(), from + Math.max(1, first));
+        ObjectNode page = objectMapper.createObjectNode();
+        page.put("__typename", "UnitConnection");
+        // The client stops walking at a null cursor
+        page.put("cursor", to < units.size() ? Integer.toString(to) : null);
+        ArrayNode pageUnits = page.putArray("units");
+        for (int i = from; i < to; i++) {
+            pageUnits.add(units.get(i).toListNode(objectMapper));
+        }
+        return page;
+    }
+
+    private ObjectNode unitDetail(String serialNumber) {
+        FakeUnit unit = unitsBySerial.get(serialNumber);
+        if (unit == null) {
+            ObjectNode notFound = objectMapper.createObjectNode();
+            notFound.put("__typename", "UnitNotFoundError");
+            notFound.put("serialNumber", serialNumber);
+            return notFound;
+        }
+        return unit.toDetailNode(objectMapper);
+    }
+
+    private ObjectNode error(String message, String code) {
+        ObjectNode response = objectMapper.createObjectNode();
+        ObjectNode error = response.putArray("errors").addObject();
+        error.put("message", message);
+        if (code != null) {
+            error.putObject("extensions").put("code", code);
+        }
+        return response;
+    }
+
+    // ---------------------------------------------------------------- update stream
+
+    // Runs on the frame scheduler thread only
+    private void tick() {
+        try {
+            for (FakeUnit unit : units) {
+                unit.step(frameRandom);
+            }
+            for (WebSocket connection : streamServer.getConnections()) {
+                ConnectionState state = connection.getAttachment();
+                if (state == null || !state.acknowledged || !connection.isOpen()) {
+                    continue;
+                }
+                for (Map.Entry<String, String> subscription : state.subscriptions.entrySet()) {
+                    FakeUnit unit = unitsById.get(subscription.getValue());
+                    if (unit == null) {
+                        continue;
+                    }
+                    if (settings.frameDropRate() > 0 && frameRandom.nextDouble() < settings.frameDropRate()) {
+                        continue;
+                    }
+                    connection.send(unit.dataFrame(subscription.getKey()));
+                    framesSent.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            long suppressed = errors.tryAcquire("tick");
+            if (suppressed >= 0) {
+                log.warn("Fake Aseko cloud frame tick failed: {} (suppressed={})", e.getMessage(), suppressed);
+            }
+        }
+    }
+
+    private void disconnectAll() {
+        int count = 0;
+        for (WebSocket connection : streamServer.getConnections()) {
+            connection.close(1011, "Injected disconnect");
+            count++;
+        }
+        if (count > 0) {
+            log.info("Fake Aseko cloud dropped {} stream connection(s)", count);
+        }
+    }
+
+    private final class UpdateStreamServer extends WebSocketServer {
+
+        UpdateStreamServer(InetSocketAddress address) {
+            super(address, List.of(new Draft_6455(Collections.emptyList(),
+                    List.<IProtocol>of(new Protocol("graphql-ws"), new Protocol("")))));
+        }
+
+        @Override
+        public void onOpen(WebSocket connection, ClientHandshake handshake) {
+            connection.setAttachment(new ConnectionState());
+        }
+
+        @Override
+        public void onClose(WebSocket connection, int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onMessage(WebSocket connection, String message) {
+            ConnectionState state = connection.getAttachment();
+            try {
+                JsonNode frame = objectMapper.readTree(message);
+                String type = frame.path("type").asText("");
+                String id = frame.path("id").asText(null);
+                switch (type) {
+                    case "connection_init":
+                        state.acknowledged = true;
+                        connection.send("{\"type\":\"connection_ack\"}");
+                        break;
+                    case "start":
+                        String unitId = frame.path("payload").path("variables").path("unitId").asText("");
+                        if (id != null && unitsById.containsKey(unitId)) {
+                            state.subscriptions.put(id, unitId);
+                        } else if (id != null) {
+                            connection.send("{\"id\":\"" + id + "\",\"type\":\"error\",\"payload\":{\"message\":\"Unknown unit\"}}");
+                        }
+                        break;
+                    case "stop":
+                        if (id != null && state.subscriptions.remove(id) != null) {
+                            connection.send("{\"id\":\"" + id + "\",\"type\":\"complete\"}");
+                        }
+                        break;
+                    case "connection_terminate":
+                        connection.close();
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IOException e) {
+                long suppressed = errors.tryAcquire("frame");
+                if (suppressed >= 0) {
+                    log.warn("Fake Aseko cloud received a bad frame: {} (suppressed={})", e.getMessage(), suppressed);
+                }
+            }
+        }
+
+        @Override
+        public void onError(WebSocket connection, Exception ex) {
+            long suppressed = errors.tryAcquire("stream");
+            if (suppressed >= 0) {
+                log.warn("Fake Aseko cloud stream error: {} (suppressed={})", ex.getMessage(), suppressed);
+            }
+        }
+
+        @Override
+        public void onStart() {
+        }
+    }
+
+    private static final class ConnectionState {
+        volatile boolean acknowledged;
+        final Map<String, String> subscriptions = new ConcurrentHashMap<>();
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        JsonNode handle(JsonNode request) throws IOException;
+    }
+
+    /**
+     * @param units                  number of units in the account
+     * @param frameRateHz            UnitUpdates frames per second for each subscribed unit
+     * @param latencyMs              fixed delay before every HTTP response
+     * @param latencyJitterMs        extra random delay of up to this much
+     * @param httpErrorRate          fraction of HTTP requests answered with 503
+     * @param frameDropRate          fraction of frames silently skipped
+     * @param disconnectEverySeconds close every stream connection at this interval, 0 to disable
+     * @param tokenTtlSeconds        lifetime of issued tokens
+     */
+    public record Settings(int httpPort, int wsPort, int httpThreads, int units, double frameRateHz,
+                           long latencyMs, long latencyJitterMs, double httpErrorRate, double frameDropRate,
+                           long disconnectEverySeconds, long tokenTtlSeconds) {
+
+        public static final Settings DEFAULTS = new Settings(8181, 8182, 16, 10, 1.0, 0, 0, 0, 0, 0, 900);
+
+        public Settings {
+            if (units < 1 || frameRateHz <= 0 || httpThreads < 1) {
+                throw new IllegalArgumentException("units, frameRateHz and httpThreads must be positive");
+            }
+        }
+    }
+
+    /**
+     * Runs the fake on its own, e.g. {@code --units=1000 --rate=10 --latency-ms=40 --error-rate=0.01}.
+     */
+    public static void main(String[] args) throws Exception {
+        Settings d = Settings.DEFAULTS;
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (arg.startsWith("--") && separator > 2) {
+                options.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        Settings settings = new Settings(
+                Integer.parseInt(options.getOrDefault("http-port", String.valueOf(d.httpPort()))),
+                Integer.parseInt(options.getOrDefault("ws-port", String.valueOf(d.wsPort()))),
+                Integer.parseInt(options.getOrDefault("http-threads", String.valueOf(d.httpThreads()))),
+                Integer.parseInt(options.getOrDefault("units", String.valueOf(d.units()))),
+                Double.parseDouble(options.getOrDefault("rate", String.valueOf(d.frameRateHz()))),
+                Long.parseLong(options.getOrDefault("latency-ms", String.valueOf(d.latencyMs()))),
+                Long.parseLong(options.getOrDefault("latency-jitter-ms", String.valueOf(d.latencyJitterMs()))),
+                Double.parseDouble(options.getOrDefault("error-rate", String.valueOf(d.httpErrorRate()))),
+                Double.parseDouble(options.getOrDefault("drop-rate", String.valueOf(d.frameDropRate()))),
+                Long.parseLong(options.getOrDefault("disconnect-every-seconds", String.valueOf(d.disconnectEverySeconds()))),
+                Long.parseLong(options.getOrDefault("token-ttl-seconds", String.valueOf(d.tokenTtlSeconds()))));
+
+        FakeAsekoCloud cloud = new FakeAsekoCloud(settings);
+        cloud.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(cloud::stop, "fake-aseko-shutdown"));
+        Thread.currentThread().join();
+    }
+}
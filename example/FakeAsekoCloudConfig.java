@@ -0,0 +1,55 @@
+package com.example.asekoflowmonitor.fake;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Starts an in-process {@link FakeAsekoCloud} when the "fake-cloud" profile is active. Point
+ * the aseko.endpoints.* properties at it (see AsekoEndpoints) to run the app against the fake
+ * instead of production.
+ */
+@Configuration
+@Profile("fake-cloud")
+public class FakeAsekoCloudConfig {
+
+    @Value("${aseko.fake.http-port:8181}")
+    private int httpPort;
+
+    @Value("${aseko.fake.ws-port:8182}")
+    private int wsPort;
+
+    @Value("${aseko.fake.http-threads:16}")
+    private int httpThreads;
+
+    @Value("${aseko.fake.units:10}")
+    private int units;
+
+    @Value("${aseko.fake.frame-rate-hz:1}")
+    private double frameRateHz;
+
+    @Value("${aseko.fake.latency-ms:0}")
+    private long latencyMs;
+
+    @Value("${aseko.fake.latency-jitter-ms:0}")
+    private long latencyJitterMs;
+
+    @Value("${aseko.fake.http-error-rate:0}")
+    private double httpErrorRate;
+
+    @Value("${aseko.fake.frame-drop-rate:0}")
+    private double frameDropRate;
+
+    @Value("${aseko.fake.disconnect-every-seconds:0}")
+    private long disconnectEverySeconds;
+
+    @Value("${aseko.fake.token-ttl-seconds:900}")
+    private long tokenTtlSeconds;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public FakeAsekoCloud fakeAsekoCloud() {
+        return new FakeAsekoCloud(new FakeAsekoCloud.Settings(httpPort, wsPort, httpThreads, units, frameRateHz,
+                latencyMs, latencyJitterMs, httpErrorRate, frameDropRate, disconnectEverySeconds, tokenTtlSeconds));
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.asekoflowmonitor.fake;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.SplittableRandom;
+
+/**
+ * One simulated unit of the {@link FakeAsekoCloud}. Measurements follow a bounded random walk
+ * advanced by the frame thread; HTTP threads read the latest {@link Reading} as a whole.
+ */
+final class FakeUnit {
+
+    // Chance per tick that the pump switches on or off
+    private static final double FLOW_TOGGLE_PROBABILITY = 0.002;
+
+    final String id;
+    final String serialNumber;
+    final String name;
+    private volatile Reading reading;
+
+    FakeUnit(String id, String serialNumber, String name, SplittableRandom random) {
+        this.id = id;
+        this.serialNumber = serialNumber;
+        this.name = name;
+        this.reading = new Reading(
+                7.0 + random.nextDouble() * 0.4,
+                620 + random.nextDouble() * 80,
+                0.4 + random.nextDouble() * 0.4,
+                26 + random.nextDouble() * 3,
+                random.nextDouble() < 0.8);
+    }
+
+    void step(SplittableRandom random) {
+        Reading current = reading;
+        reading = new Reading(
+                walk(current.ph, 0.01, 6.8, 7.8, random),
+                walk(current.rx, 2, 550, 780, random),
+                walk(current.cl, 0.01, 0.1, 1.5, random),
+                walk(current.temperature, 0.02, 20, 34, random),
+                random.nextDouble() < FLOW_TOGGLE_PROBABILITY ? !current.flowing : current.flowing);
+    }
+
+    /**
+     * A graphql-ws data frame for the UnitUpdates subscription, written without a tree since
+     * the frame thread builds thousands per second.
+     */
+    String dataFrame(String operationId) {
+        Reading r = reading;
+        return new StringBuilder(256)
+                .append("{\"type\":\"data\",\"id\":\"").append(operationId)
+                .append("\",\"payload\":{\"data\":{\"unit\":{\"id\":\"").append(id)
+                .append("\",\"measurements\":{\"ph\":").append(round(r.ph, 100))
+                .append(",\"rx\":").append(Math.round(r.rx))
+                .append(",\"cl\":").append(round(r.cl, 100))
+                .append(",\"temperature\":").append(round(r.temperature, 10))
+                .append(",\"waterflow\":").append(r.flowing ? 1 : 0)
+                .append("},\"variables\":{\"ph_setpoint\":7.2,\"rx_setpoint\":680.0,\"cl_setpoint\":0.6}")
+                .append(",\"dosing\":{\"ph_minus\":0.0,\"cl\":0.0,\"floc\":0.0}}}}}")
+                .toString();
+    }
+
+    ObjectNode toUnitUpdateNode(ObjectMapper objectMapper) {
+        Reading r = reading;
+        ObjectNode unit = objectMapper.createObjectNode();
+        unit.put("id", id);
+        ObjectNode measurements = unit.putObject("measurements");
+        measurements.put("ph", round(r.ph, 100));
+        measurements.put("rx", Math.round(r.rx));
+        measurements.put("cl", round(r.cl, 100));
+        measurements.put("temperature", round(r.temperature, 10));
+        measurements.put("waterflow", r.flowing ? 1 : 0);
+        return unit;
+    }
+
+    ObjectNode toListNode(ObjectMapper objectMapper) {
+        ObjectNode unit = objectMapper.createObjectNode();
+        unit.put("__typename", "Unit");
+        unit.put("id", id);
+        unit.put("serialNumber", serialNumber);
+        unit.put("name", name);
+        unit.put("note", "");
+        unit.put("position", "0");
+        unit.putArray("statusMessages");
+        unit.put("online", true);
+        unit.put("hasWarning", false);
+        return unit;
+    }
+
+    ObjectNode toDetailNode(ObjectMapper objectMapper) {
+        Reading r = reading;
+        ObjectNode unit = objectMapper.createObjectNode();
+        unit.put("__typename", "Unit");
+        unit.put("serialNumber", serialNumber);
+        unit.put("name", name);
+        unit.put("note", "");
+        unit.putArray("statusMessages");
+        ObjectNode statusValues = unit.putObject("statusValues");
+        statusValues.put("__typename", "StatusValues");
+        ArrayNode primary = statusValues.putArray("primary");
+        primary.add(statusValue(objectMapper, "WATER_TEMPERATURE", "Pool", Double.toString(round(r.temperature, 10)), "\u00b0C"));
+        primary.add(statusValue(objectMapper, "PH", "pH", Double.toString(round(r.ph, 100)), ""));
+        primary.add(statusValue(objectMapper, "REDOX", "Redox", Long.toString(Math.round(r.rx)), "mV"));
+        primary.add(statusValue(objectMapper, "WATER_FLOW_TO_PROBES", "Flow", r.flowing ? "YES" : "NO", ""));
+        statusValues.putArray("secondary");
+        ObjectNode backwash = unit.putObject("backwash");
+        backwash.put("__typename", "BackwashStatus");
+        backwash.put("id", id + "-backwash");
+        backwash.put("running", false);
+        return unit;
+    }
+
+    private ObjectNode statusValue(ObjectMapper objectMapper, String type, String label, String value, String unitLabel) {
+        ObjectNode statusValue = objectMapper.createObjectNode();
+        statusValue.put("__typename", "StatusValue");
+        statusValue.put("id", id + "-" + type);
+        statusValue.put("type", type);
+        statusValue.put("topLeft", label);
+        statusValue.put("bottomRight", unitLabel);
+        ObjectNode center = statusValue.putObject("center");
+        center.put("__typename", "StringValue");
+        center.put("value", value);
+        return statusValue;
+    }
+
+    private static double walk(double value, double step, double min, double max, SplittableRandom random) {
+        double next = value + (random.nextDouble() * 2 - 1) * step;
+        return Math.max(min, Math.min(max, next));
+    }
+
+    private static double round(double value, int scale) {
+        return Math.round(value * scale) / (double) scale;
+    }
+
+    private record Reading(double ph, double rx, double cl, double temperature, boolean flowing) {
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.FlowTransition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns the per-frame waterflow readings of each unit into flow transitions. A stopped unit
+ * starts flowing at {@code aseko.flow.on-threshold} or above and a flowing unit stops at
+ * {@code aseko.flow.off-threshold} or below; readings in between keep the current state, so noise
+ * around zero cannot make it flap. A new state must also last {@code aseko.flow.min-dwell-ms}
+ * before it is reported. Times are the receive times of the frames, not the wall clock.
+ *
+ * <p>Readings come from the update pipeline thread only, but {@link #forget} comes from unit list
+ * refreshes, so every method synchronizes on the machine. The lock is uncontended per frame.
+ */
+@Component
+public class FlowStateMachine {
+
+    private final double onThreshold;
+    private final double offThreshold;
+    private final long minDwellMillis;
+    private final Map<String, UnitFlow> units = new HashMap<>();
+
+    @Autowired
+    public FlowStateMachine(@Value("${aseko.flow.on-threshold:0.5}") double onThreshold,
+                            @Value("${aseko.flow.off-threshold:0}") double offThreshold,
+                            @Value("${aseko.flow.min-dwell-ms:3000}") long minDwellMillis) {
+        if (offThreshold >= onThreshold) {
+            throw new IllegalArgumentException("aseko.flow.off-threshold must be below aseko.flow.on-threshold");
+        }
+        this.onThreshold = onThreshold;
+        this.offThreshold = offThreshold;
+        this.minDwellMillis = Math.max(0, minDwellMillis);
+    }
+
+    /**
+     * Feeds one reading. Returns the transition it confirms, or null if the reported state of
+     * the unit stays the same.
+     */
+    public synchronized FlowTransition observe(String unitId, double waterflow, long receivedAt) {
+        UnitFlow flow = units.get(unitId);
+        if (flow == null) {
+            // Nothing to debounce against yet; report the first reading as the starting state
+            boolean flowing = waterflow >= onThreshold;
+            units.put(unitId, new UnitFlow(flowing, receivedAt));
+            return new FlowTransition(unitId, flowing, receivedAt, receivedAt, 0, waterflow, true);
+        }
+
+        boolean candidate = flow.flowing ? waterflow > offThreshold : waterflow >= onThreshold;
+        if (candidate == flow.flowing) {
+            flow.pendingSince = -1;
+            return null;
+        }
+        if (flow.pendingSince < 0) {
+            flow.pendingSince = receivedAt;
+        }
+        if (receivedAt - flow.pendingSince < minDwellMillis) {
+            return null;
+        }
+
+        long changedAt = flow.pendingSince;
+        FlowTransition transition = new FlowTransition(unitId, candidate, changedAt, receivedAt,
+                Math.max(0, changedAt - flow.since), waterflow, false);
+        flow.flowing = candidate;
+        flow.since = changedAt;
+        flow.pendingSince = -1;
+        return transition;
+    }
+
+    /**
+     * Whether any unit seen so far is in the flowing state, after hysteresis and dwell.
+     */
+    public synchronized boolean anyFlowing() {
+        for (UnitFlow flow : units.values()) {
+            if (flow.flowing) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the state of a unit that is no longer monitored. Returns whether it had any.
+     */
+    public synchronized boolean forget(String unitId) {
+        return units.remove(unitId) != null;
+    }
+
+    private static final class UnitFlow {
+        boolean flowing;
+        long since;
+        // Receive time of the first reading that disagreed with the current state, or -1
+        long pendingSince = -1;
+
+        UnitFlow(boolean flowing, long since) {
+            this.flowing = flowing;
+            this.since = since;
+        }
+    }
+}
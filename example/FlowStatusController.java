@@ -1,61 +1,83 @@
 package com.example.asekoflowmonitor.controller;
 
+import com.example.asekoflowmonitor.model.MonitorSnapshot;
+import com.example.asekoflowmonitor.model.UnitDetail;
+import com.example.asekoflowmonitor.model.UnitList;
+import com.example.asekoflowmonitor.model.UnitState;
 import com.example.asekoflowmonitor.service.DirectWebSocketService;
 import com.example.asekoflowmonitor.service.GraphQLService;
+import com.example.asekoflowmonitor.service.MonitorStateStore;
+import com.example.asekoflowmonitor.service.StompBroadcaster;
+import com.example.asekoflowmonitor.service.UnitDetailCache;
+import com.example.asekoflowmonitor.service.UnitDetailFanOutService;
 import com.example.asekoflowmonitor.service.UnitService;
-import com.example.asekoflowmonitor.service.WebSocketService;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import com.example.asekoflowmonitor.service.AuthService;
 
+import java.util.concurrent.CompletableFuture;
+
 @Controller
 public class FlowStatusController {
 
+    private static final Logger log = LoggerFactory.getLogger(FlowStatusController.class);
+
     private final GraphQLService graphQLService;
-    private final WebSocketService webSocketService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final StompBroadcaster broadcaster;
     private final DirectWebSocketService directWebSocketService;
     private final UnitService unitService;
     private final AuthService authService;
-    private boolean currentFlowStatus = false;
+    private final UnitDetailCache unitDetailCache;
+    private final UnitDetailFanOutService unitDetailFanOutService;
+    private final MonitorStateStore stateStore;
+    private final ObjectMapper objectMapper = new ObjectMapper();
     
     @Autowired
     public FlowStatusController(GraphQLService graphQLService, 
-                                WebSocketService webSocketService,
-                                SimpMessagingTemplate messagingTemplate,
+                                StompBroadcaster broadcaster,
                                 DirectWebSocketService directWebSocketService,
                                 UnitService unitService,
-                                AuthService authService) {
+                                AuthService authService,
+                                UnitDetailCache unitDetailCache,
+                                UnitDetailFanOutService unitDetailFanOutService,
+                                MonitorStateStore stateStore) {
         this.graphQLService = graphQLService;
-        this.webSocketService = webSocketService;
-        this.messagingTemplate = messagingTemplate;
+        this.broadcaster = broadcaster;
         this.directWebSocketService = directWebSocketService;
         this.unitService = unitService;
         this.authService = authService;
+        this.unitDetailCache = unitDetailCache;
+        this.unitDetailFanOutService = unitDetailFanOutService;
+        this.stateStore = stateStore;
         
-        // Register callback for WebSocket updates - using the direct service now
-        this.directWebSocketService.connectWebSocket(this::updateFlowStatus);
+        // Only listens; DirectWebSocketService owns the connection and opens it once the app is ready
+        this.directWebSocketService.addFlowStatusListener(this::updateFlowStatus);
+        this.directWebSocketService.addFlowTransitionListener(
+                transition -> broadcaster.publish("/topic/flowTransitions", transition.unitId(), transition));
     }
     
     @GetMapping("/")
     public String index(Model model) {
         try {
-            // Initial status from DirectWebSocketService
-            boolean status = directWebSocketService.getFlowStatus();
-            model.addAttribute("flowStatus", status);
+            // Status and unit list from the same snapshot
+            MonitorSnapshot snapshot = stateStore.current();
+            model.addAttribute("flowStatus", snapshot.flowStatus());
             
             // Add unitList data if available
-            JsonNode unitListData = unitService.getUnitList();
+            UnitList unitListData = snapshot.unitList();
             if (unitListData != null) {
-                model.addAttribute("unitList", unitListData.toString());
+                model.addAttribute("unitList", objectMapper.writeValueAsString(unitListData));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -69,40 +91,67 @@ public class FlowStatusController {
     @GetMapping("/api/status")
     @ResponseBody
     public boolean getStatus() {
-        try {
-            return directWebSocketService.getFlowStatus();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
+        return stateStore.current().flowStatus();
     }
     
     @GetMapping("/api/units")
     @ResponseBody
-    public JsonNode getUnits() {
-        return unitService.getUnitList();
+    public UnitList getUnits() {
+        return stateStore.current().unitList();
     }
     
     @GetMapping("/api/selected-unit")
     @ResponseBody
-    public JsonNode getSelectedUnit() {
-        return unitService.getSelectedUnit();
+    public UnitDetail getSelectedUnit() {
+        return stateStore.current().selectedUnit();
+    }
+    
+    @GetMapping("/api/units/{unitId}/state")
+    @ResponseBody
+    public ResponseEntity<UnitState> getUnitState(@PathVariable String unitId) {
+        UnitState state = stateStore.unit(unitId);
+        return state != null ? ResponseEntity.ok(state) : ResponseEntity.notFound().build();
+    }
+    
+    @GetMapping("/api/units/details")
+    @ResponseBody
+    public CompletableFuture<ResponseEntity<JsonNode>> getAllUnitDetails() {
+        if (unitService.getUnitList() == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
+        return unitDetailFanOutService.fetchAllUnitDetails().thenApply(ResponseEntity::ok);
     }
     
     @GetMapping("/api/unit/{serialNumber}")
     @ResponseBody
-    public ResponseEntity<JsonNode> getUnitDetails(@PathVariable String serialNumber) {
-        try {
-            JsonNode unitDetail = unitService.fetchUnitDetail(serialNumber);
+    public CompletableFuture<ResponseEntity<UnitDetail>> getUnitDetails(@PathVariable String serialNumber) {
+        // The servlet thread is released while the detail loads
+        return unitDetailCache.getAsync(serialNumber).handle((unitDetail, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            }
             if (unitDetail != null) {
                 return ResponseEntity.ok(unitDetail);
             } else {
                 return ResponseEntity.notFound().build();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        });
+    }
+    
+    /**
+     * Latest snapshot for a delta topic, e.g. /api/resync?topic=/topic/poolData&key=unitId.
+     * Clients call this on join or after a gap in seq, then apply patches with a higher seq.
+     */
+    @GetMapping("/api/resync")
+    @ResponseBody
+    public ResponseEntity<JsonNode> resync(@RequestParam String topic,
+                                           @RequestParam(required = false) String key) {
+        if (!broadcaster.isDeltaTopic(topic)) {
+            return ResponseEntity.badRequest().build();
         }
+        JsonNode snapshot = broadcaster.snapshot(topic, key);
+        return snapshot != null ? ResponseEntity.ok(snapshot) : ResponseEntity.notFound().build();
     }
     
     @GetMapping("/api/user-profile")
@@ -112,9 +161,8 @@ public class FlowStatusController {
     }
     
     private void updateFlowStatus(boolean status) {
-        this.currentFlowStatus = status;
         // Send update to connected clients
-        messagingTemplate.convertAndSend("/topic/status", status);
-        System.out.println("Sent flow status update to clients: " + status);
+        broadcaster.publish("/topic/status", status);
+        log.debug("Sent flow status update flowing={}", status);
     }
 } 
\ No newline at end of file
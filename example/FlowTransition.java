@@ -0,0 +1,17 @@
+package com.example.asekoflowmonitor.model;
+
+/**
+ * A confirmed change of a unit's flow state. {@code changedAt} is when the new state was first
+ * seen, {@code confirmedAt} when it had lasted the minimum dwell time, and
+ * {@code previousDurationMillis} how long the unit had been in the state it left. The first
+ * reading of a unit is reported with {@code initial} set and a previous duration of 0.
+ */
+public record FlowTransition(
+        String unitId,
+        boolean flowing,
+        long changedAt,
+        long confirmedAt,
+        long previousDurationMillis,
+        Double waterflow,
+        boolean initial) {
+}
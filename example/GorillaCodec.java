@@ -0,0 +1,208 @@
+package com.example.asekoflowmonitor.history;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla-style compression for (timestamp, value) samples: timestamps are stored as
+ * delta-of-deltas, values as the XOR against the previous value with the leading and
+ * trailing zero bits elided. Slowly changing pool measurements compress to a few bits each.
+ */
+final class GorillaCodec {
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * Appends samples to a growable bit buffer. Not thread-safe; callers serialize access.
+     */
+    static final class Encoder {
+        private byte[] buffer = new byte[256];
+        private long bitPosition = 0;
+
+        private int count = 0;
+        private long previousTimestamp;
+        private long previousDelta;
+        private long previousValueBits;
+        private int previousLeading = Integer.MAX_VALUE;
+        private int previousTrailing = 0;
+
+        void append(long timestamp, double value) {
+            long valueBits = Double.doubleToRawLongBits(value);
+            if (count == 0) {
+                writeBits(timestamp, 64);
+                writeBits(valueBits, 64);
+            } else {
+                long delta = timestamp - previousTimestamp;
+                writeTimestampDelta(count == 1 ? delta : delta - previousDelta);
+                writeValue(valueBits);
+                previousDelta = delta;
+            }
+            previousTimestamp = timestamp;
+            previousValueBits = valueBits;
+            count++;
+        }
+
+        int count() {
+            return count;
+        }
+
+        int byteLength() {
+            return (int) ((bitPosition + 7) >>> 3);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, byteLength());
+        }
+
+        private void writeTimestampDelta(long deltaOfDelta) {
+            long zigzag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 63);
+            if (zigzag == 0) {
+                writeBits(0b0, 1);
+            } else if (zigzag < (1L << 7)) {
+                writeBits(0b10, 2);
+                writeBits(zigzag, 7);
+            } else if (zigzag < (1L << 12)) {
+                writeBits(0b110, 3);
+                writeBits(zigzag, 12);
+            } else if (zigzag < (1L << 20)) {
+                writeBits(0b1110, 4);
+                writeBits(zigzag, 20);
+            } else {
+                writeBits(0b1111, 4);
+                writeBits(zigzag, 64);
+            }
+        }
+
+        private void writeValue(long valueBits) {
+            long xor = valueBits ^ previousValueBits;
+            if (xor == 0) {
+                writeBits(0b0, 1);
+                return;
+            }
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (previousLeading != Integer.MAX_VALUE && leading >= previousLeading && trailing >= previousTrailing) {
+                // Meaningful bits fit in the previous window
+                writeBits(0b10, 2);
+                writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                writeBits(0b11, 2);
+                writeBits(leading, 5);
+                writeBits(meaningful == 64 ? 0 : meaningful, 6);
+                writeBits(xor >>> trailing, meaningful);
+                previousLeading = leading;
+                previousTrailing = trailing;
+            }
+        }
+
+        private void writeBits(long value, int bits) {
+            ensureCapacity(bitPosition + bits);
+            // Fill up to a byte at a time, most significant bits first
+            while (bits > 0) {
+                int index = (int) (bitPosition >>> 3);
+                int available = 8 - (int) (bitPosition & 7);
+                int take = Math.min(available, bits);
+                int chunk = (int) ((value >>> (bits - take)) & ((1L << take) - 1));
+                buffer[index] |= (byte) (chunk << (available - take));
+                bitPosition += take;
+                bits -= take;
+            }
+        }
+
+        private void ensureCapacity(long bits) {
+            int needed = (int) ((bits + 7) >>> 3);
+            if (needed > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Decodes a block written by {@link Encoder}.
+     */
+    static final class Decoder {
+        private final ByteBuffer data;
+        private final int start;
+        private long bitPosition = 0;
+
+        Decoder(ByteBuffer data, int offset) {
+            this.data = data;
+            this.start = offset;
+        }
+
+        /**
+         * Decodes {@code count} samples, appending those within [from, to] to {@code out}.
+         */
+        void decodeInto(int count, long from, long to, SeriesData out) {
+            long timestamp = 0;
+            long delta = 0;
+            long valueBits = 0;
+            int leading = 0;
+            int trailing = 0;
+
+            for (int i = 0; i < count; i++) {
+                if (i == 0) {
+                    timestamp = readBits(64);
+                    valueBits = readBits(64);
+                } else {
+                    long deltaOfDelta = readTimestampDelta();
+                    delta = i == 1 ? deltaOfDelta : delta + deltaOfDelta;
+                    timestamp += delta;
+
+                    if (readBits(1) != 0) {
+                        if (readBits(1) != 0) {
+                            leading = (int) readBits(5);
+                            int meaningful = (int) readBits(6);
+                            if (meaningful == 0) {
+                                meaningful = 64;
+                            }
+                            trailing = 64 - leading - meaningful;
+                        }
+                        int meaningful = 64 - leading - trailing;
+                        valueBits ^= readBits(meaningful) << trailing;
+                    }
+                }
+
+                if (timestamp > to) {
+                    return;
+                }
+                if (timestamp >= from) {
+                    out.add(timestamp, Double.longBitsToDouble(valueBits));
+                }
+            }
+        }
+
+        private long readTimestampDelta() {
+            int bits;
+            if (readBits(1) == 0) {
+                return 0;
+            } else if (readBits(1) == 0) {
+                bits = 7;
+            } else if (readBits(1) == 0) {
+                bits = 12;
+            } else if (readBits(1) == 0) {
+                bits = 20;
+            } else {
+                bits = 64;
+            }
+            long zigzag = readBits(bits);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private long readBits(int bits) {
+            long value = 0;
+            while (bits > 0) {
+                int index = start + (int) (bitPosition >>> 3);
+                int available = 8 - (int) (bitPosition & 7);
+                int take = Math.min(available, bits);
+                int chunk = ((data.get(index) & 0xFF) >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                bitPosition += take;
+                bits -= take;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.asekoflowmonitor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * DataLoader-style batching in front of {@link GraphQLClient}. Operations issued for the same
+ * endpoint within a short window are sent as one array-batched request and each caller's
+ * future is completed with its own entry of the response, so refreshing every unit's detail
+ * costs one round trip instead of one per unit.
+ *
+ * <p>A window holding a single operation is sent as a normal request. If the server says it
+ * does not accept batches, the operations are sent one by one and batching stays off for that
+ * endpoint. Any other failure (5xx, timeouts, an auth failure the client could not recover
+ * from) fails the operations of that window only and batching stays on.
+ *
+ * <p>At most {@code aseko.graphql.batch.max-in-flight} requests, batched or single, are
+ * outstanding at once; further windows wait in a queue without holding a thread. Refreshing a
+ * large fleet therefore stays bounded even when batching is off for the endpoint.
+ */
+@Service
+public class GraphQLBatchLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphQLBatchLoader.class);
+
+    private final GraphQLClient graphQLClient;
+    private final GraphQLOperationRegistry registry;
+    private final ObjectMapper objectMapper;
+    private final Map<String, List<Pending<?>>> windows = new HashMap<>();
+    private final Map<String, Boolean> batchingUnsupported = new HashMap<>();
+    private final int maxInFlight;
+    // Requests waiting for an in-flight slot; guards inFlight too
+    private final ArrayDeque<Supplier<CompletableFuture<?>>> waiting = new ArrayDeque<>();
+    private int inFlight;
+    // Guarded by the windows monitor; once set, no new window is opened
+    private boolean shutDown;
+    private final ScheduledExecutorService windowScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "graphql-batch-window");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${aseko.graphql.batch.enabled:true}")
+    private boolean enabled;
+
+    @Value("${aseko.graphql.batch.window-ms:10}")
+    private long windowMs;
+
+    @Value("${aseko.graphql.batch.max-size:25}")
+    private int maxSize;
+
+    @Autowired
+    public GraphQLBatchLoader(GraphQLClient graphQLClient, GraphQLOperationRegistry registry,
+                              @Value("${aseko.graphql.batch.max-in-flight:8}") int maxInFlight) {
+        this.graphQLClient = graphQLClient;
+        this.registry = registry;
+        this.objectMapper = new ObjectMapper();
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<List<Pending<?>>> unsent;
+        synchronized (windows) {
+            shutDown = true;
+            unsent = new ArrayList<>(windows.values());
+            windows.clear();
+        }
+        windowScheduler.shutdownNow();
+        // Their flush tasks were just dropped; fail the callers instead of leaving them waiting
+        IOException stopped = new IOException("GraphQL batch loader is shut down");
+        unsent.forEach(window -> window.forEach(pending -> pending.future.completeExceptionally(stopped)));
+    }
+
+    public <T> CompletableFuture<JsonResponseDecoder.GraphQLResponse<T>> load(String operationName, Object variables,
+                                                                             String dataField, Class<T> type) {
+        return load(graphQLClient.getDefaultEndpoint(), operationName, variables, dataField, type);
+    }
+
+    /**
+     * Queues the operation for the endpoint's current window. The future completes with the
+     * same response {@link GraphQLClient#execute} would have returned, or exceptionally on
+     * transport failure.
+     */
+    public <T> CompletableFuture<JsonResponseDecoder.GraphQLResponse<T>> load(String endpoint, String operationName,
+                                                                             Object variables, String dataField,
+                                                                             Class<T> type) {
+        Pending<T> pending;
+        try {
+            pending = new Pending<>(new GraphQLClient.BatchedOperation(registry.get(operationName),
+                    objectMapper.writeValueAsBytes(variables), dataField, type), variables, type);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        List<Pending<?>> full = null;
+        synchronized (windows) {
+            if (shutDown) {
+                return CompletableFuture.failedFuture(new IOException("GraphQL batch loader is shut down"));
+            }
+            List<Pending<?>> window = enabled && !batchingUnsupported.containsKey(endpoint) ? openWindow(endpoint) : null;
+            if (window == null) {
+                full = List.of(pending);
+            } else {
+                window.add(pending);
+                if (window.size() >= maxSize) {
+                    windows.remove(endpoint);
+                    full = window;
+                }
+            }
+        }
+        if (full != null) {
+            send(endpoint, full);
+        }
+        return pending.future;
+    }
+
+    /**
+     * The endpoint's open window, opening one if needed. Returns null if no window could be
+     * scheduled, in which case the caller sends the operation on its own. Call with the
+     * windows monitor held.
+     */
+    private List<Pending<?>> openWindow(String endpoint) {
+        List<Pending<?>> window = windows.get(endpoint);
+        if (window == null) {
+            window = new ArrayList<>();
+            if (!scheduleFlush(endpoint, window)) {
+                return null;
+            }
+            windows.put(endpoint, window);
+        }
+        return window;
+    }
+
+    private boolean scheduleFlush(String endpoint, List<Pending<?>> window) {
+        try {
+            windowScheduler.schedule(() -> {
+                synchronized (windows) {
+                    // Already sent if it filled up before the window closed
+                    if (windows.get(endpoint) != window) {
+                        return;
+                    }
+                    windows.remove(endpoint);
+                }
+                send(endpoint, window);
+            }, windowMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts the request for a closed window and returns; callers' futures complete from the
+     * HTTP client's callback threads.
+     */
+    private void send(String endpoint, List<Pending<?>> window) {
+        if (window.size() == 1) {
+            window.get(0).executeAlone(endpoint);
+            return;
+        }
+        List<GraphQLClient.BatchedOperation> batch = new ArrayList<>(window.size());
+        window.forEach(pending -> batch.add(pending.operation));
+        limit(() -> graphQLClient.executeBatchAsync(endpoint, batch)).whenComplete((responses, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                window.forEach(pending -> pending.future.completeExceptionally(cause));
+                return;
+            }
+            if (responses != null) {
+                for (int i = 0; i < window.size(); i++) {
+                    window.get(i).complete(responses.get(i));
+                }
+                log.debug("Sent {} GraphQL operations in one batch", window.size());
+                return;
+            }
+            log.info("Batching not supported by {}, sending operations individually", endpoint);
+            synchronized (windows) {
+                batchingUnsupported.put(endpoint, Boolean.TRUE);
+            }
+            window.forEach(pending -> pending.executeAlone(endpoint));
+        });
+    }
+
+    /**
+     * Starts {@code request} now if fewer than maxInFlight requests are outstanding, otherwise
+     * when one of them completes. The returned future completes with the request's result.
+     */
+    private <R> CompletableFuture<R> limit(Supplier<CompletableFuture<R>> request) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Supplier<CompletableFuture<?>> start = () -> {
+            CompletableFuture<R> call;
+            try {
+                call = request.get();
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            return call.whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+        synchronized (waiting) {
+            if (inFlight >= maxInFlight) {
+                waiting.add(start);
+                return result;
+            }
+            inFlight++;
+        }
+        run(start);
+        return result;
+    }
+
+    private void run(Supplier<CompletableFuture<?>> start) {
+        start.get().whenComplete((value, error) -> {
+            Supplier<CompletableFuture<?>> next;
+            synchronized (waiting) {
+                next = waiting.poll();
+                if (next == null) {
+                    inFlight--;
+                }
+            }
+            // The finished request hands its slot straight to the next one; starting it on the
+            // window thread keeps requests that fail synchronously from recursing down the queue
+            if (next != null) {
+                try {
+                    windowScheduler.execute(() -> run(next));
+                } catch (RejectedExecutionException e) {
+                    run(next);
+                }
+            }
+        });
+    }
+
+    private final class Pending<T> {
+        final GraphQLClient.BatchedOperation operation;
+        final Object variables;
+        final Class<T> type;
+        final CompletableFuture<JsonResponseDecoder.GraphQLResponse<T>> future = new CompletableFuture<>();
+
+        Pending(GraphQLClient.BatchedOperation operation, Object variables, Class<T> type) {
+            this.operation = operation;
+            this.variables = variables;
+            this.type = type;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(JsonResponseDecoder.GraphQLResponse<?> response) {
+            // The decoder bound data to this entry's own type
+            future.complete((JsonResponseDecoder.GraphQLResponse<T>) response);
+        }
+
+        void executeAlone(String endpoint) {
+            limit(() -> graphQLClient.executeAsync(endpoint, operation.operation.getName(), variables, operation.dataField, type))
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            future.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                                    ? error.getCause() : error);
+                        } else {
+                            future.complete(response);
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.config.AsekoEndpoints;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs registry operations against the Aseko GraphQL HTTP endpoint. With persisted queries
+ * enabled, the first request sends only the query hash; the full document goes out once when
+ * the server reports PersistedQueryNotFound, and never again for an operation whose server
+ * reports PersistedQueryNotSupported or rejects hash-only requests with 400, 404 or 405. Other
+ * failed hash-only requests fall back to the full document for that call only.
+ *
+ * <p>A 401 invalidates the token and the call is retried once with a fresh one.
+ *
+ * <p>Requests go out on the non-blocking client, so every operation is available as a
+ * {@link CompletableFuture}; the blocking {@code execute} variants just wait on it. Response
+ * bodies are decoded straight from the stream as they arrive, never buffered whole. Reading
+ * that stream blocks, so it runs on a small decode pool ({@code aseko.graphql.decode-threads})
+ * rather than on the HTTP client's executor, which has to keep delivering the bytes.
+ */
+@Service
+public class GraphQLClient {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphQLClient.class);
+
+    private final GraphQLOperationRegistry registry;
+    private final AuthService authService;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final String defaultEndpoint;
+    private final AsekoMetrics metrics;
+    private final ExecutorService decodeExecutor;
+
+    @Value("${aseko.graphql.persisted-queries:true}")
+    private boolean persistedQueries;
+
+    @Value("${aseko.http.socket-timeout-ms:15000}")
+    private long requestTimeoutMs;
+
+    @Autowired
+    public GraphQLClient(GraphQLOperationRegistry registry, AuthService authService, HttpClient asekoAsyncHttpClient,
+                         AsekoEndpoints endpoints, AsekoMetrics metrics,
+                         @Value("${aseko.graphql.decode-threads:8}") int decodeThreads) {
+        this.registry = registry;
+        this.authService = authService;
+        this.httpClient = asekoAsyncHttpClient;
+        this.objectMapper = new ObjectMapper();
+        this.defaultEndpoint = endpoints.getGraphqlUrl();
+        this.metrics = metrics;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.decodeExecutor = Executors.newFixedThreadPool(decodeThreads, r -> {
+            Thread thread = new Thread(r, "aseko-graphql-decode-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        decodeExecutor.shutdownNow();
+    }
+
+    /**
+     * The GraphQL endpoint used when callers do not name one, from {@link AsekoEndpoints}.
+     */
+    public String getDefaultEndpoint() {
+        return defaultEndpoint;
+    }
+
+    public <T> JsonResponseDecoder.GraphQLResponse<T> execute(String operationName, Object variables,
+                                                              String dataField, Class<T> type) throws IOException {
+        return execute(defaultEndpoint, operationName, variables, dataField, type);
+    }
+
+    /**
+     * Executes the named operation and binds data.{dataField} to {@code type}. GraphQL errors
+     * are returned in the response; transport failures and non-200 statuses throw.
+     */
+    public <T> JsonResponseDecoder.GraphQLResponse<T> execute(String endpoint, String operationName, Object variables,
+                                                              String dataField, Class<T> type) throws IOException {
+        return await(executeAsync(endpoint, operationName, variables, dataField, type));
+    }
+
+    public <T> CompletableFuture<JsonResponseDecoder.GraphQLResponse<T>> executeAsync(String operationName, Object variables,
+                                                                                     String dataField, Class<T> type) {
+        return executeAsync(defaultEndpoint, operationName, variables, dataField, type);
+    }
+
+    /**
+     * Non-blocking {@link #execute}. Transport failures and non-200 statuses complete the
+     * future exceptionally with an IOException.
+     */
+    public <T> CompletableFuture<JsonResponseDecoder.GraphQLResponse<T>> executeAsync(String endpoint, String operationName,
+                                                                                     Object variables, String dataField,
+                                                                                     Class<T> type) {
+        GraphQLOperation operation = registry.get(operationName);
+        byte[] variablesJson;
+        try {
+            variablesJson = objectMapper.writeValueAsBytes(variables);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return metrics.timeUpstream(operationName, false, withAuthRetry(token -> {
+            if (!persistedQueries || !operation.isPersistedQueriesSupported()) {
+                return sendFull(endpoint, token, operation, variablesJson, dataField, type);
+            }
+            return post(endpoint, token, operation.persistedBody(variablesJson)).thenComposeAsync(hashOnly -> {
+                if (hashOnly.statusCode() == 200) {
+                    JsonResponseDecoder.GraphQLResponse<T> response = decode(hashOnly.body(), dataField, type);
+                    String persistedError = persistedQueryError(response.getErrors());
+                    if (persistedError == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    if (!"PersistedQueryNotFound".equals(persistedError)) {
+                        log.info("Persisted queries not supported for {}, sending full documents", operationName);
+                        operation.markPersistedQueriesUnsupported();
+                    }
+                } else {
+                    // The body of a failed hash-only request is never read
+                    close(hashOnly);
+                    if (hashOnly.statusCode() == 401) {
+                        throw new CompletionException(new UnauthorizedException(token));
+                    } else if (rejectsPersistedQueries(hashOnly.statusCode())) {
+                        // Servers without persisted query support commonly reject hash-only requests outright
+                        log.info("Hash-only {} rejected (HTTP {}), sending full documents", operationName, hashOnly.statusCode());
+                        operation.markPersistedQueriesUnsupported();
+                    } else {
+                        // Likely transient (5xx and the like); keep persisted queries for later calls
+                        log.warn("Hash-only {} failed (HTTP {}), sending the full document for this call",
+                                operationName, hashOnly.statusCode());
+                    }
+                }
+                return sendFull(endpoint, token, operation, variablesJson, dataField, type);
+            }, decodeExecutor);
+        }));
+    }
+
+    private <T> CompletableFuture<JsonResponseDecoder.GraphQLResponse<T>> sendFull(String endpoint, String token,
+                                                                                  GraphQLOperation operation,
+                                                                                  byte[] variablesJson,
+                                                                                  String dataField, Class<T> type) {
+        byte[] body = operation.isPersistedQueriesSupported() && persistedQueries
+                ? operation.registeringBody(variablesJson)
+                : operation.plainBody(variablesJson);
+        return post(endpoint, token, body).thenApplyAsync(response -> {
+            if (response.statusCode() == 401) {
+                close(response);
+                throw new CompletionException(new UnauthorizedException(token));
+            }
+            if (response.statusCode() != 200) {
+                log.warn("{} failed status={} response={}", operation.getName(), response.statusCode(),
+                        errorBody(response));
+                throw new CompletionException(new IOException(operation.getName() + " failed, status: "
+                        + response.statusCode()));
+            }
+            return decode(response.body(), dataField, type);
+        }, decodeExecutor);
+    }
+
+    /**
+     * Sends several operations as one array-batched request and completes with their
+     * responses in request order. Operations that miss the persisted query cache are re-sent
+     * together in a second batch with their documents, or one by one if that batch is refused.
+     * Completes with null when the server does not accept batches (a 400 or 415, or a single
+     * object instead of an array), in which case the caller should execute the operations one
+     * by one. Any other failure completes the future exceptionally and says nothing about batch
+     * support.
+     */
+    CompletableFuture<List<JsonResponseDecoder.GraphQLResponse<?>>> executeBatchAsync(String endpoint,
+                                                                                      List<BatchedOperation> batch) {
+        return metrics.timeUpstream(batchOperationName(batch), true, withAuthRetry(token -> {
+            List<byte[]> bodies = new ArrayList<>(batch.size());
+            for (BatchedOperation entry : batch) {
+                GraphQLOperation operation = entry.operation;
+                bodies.add(persistedQueries && operation.isPersistedQueriesSupported()
+                        ? operation.persistedBody(entry.variables)
+                        : operation.plainBody(entry.variables));
+            }
+            return postBatch(endpoint, token, bodies, batch)
+                    .thenCompose(responses -> retryPersistedMisses(endpoint, token, batch, responses));
+        }));
+    }
+
+    // Batches usually hold one kind of operation, e.g. detail queries for many units
+    private static String batchOperationName(List<BatchedOperation> batch) {
+        String name = batch.get(0).operation.getName();
+        for (BatchedOperation entry : batch) {
+            if (!name.equals(entry.operation.getName())) {
+                return "mixed";
+            }
+        }
+        return name;
+    }
+
+    // Second round for persisted query misses, mirroring executeAsync()
+    private CompletableFuture<List<JsonResponseDecoder.GraphQLResponse<?>>> retryPersistedMisses(
+            String endpoint, String token, List<BatchedOperation> batch, List<JsonResponseDecoder.GraphQLResponse<?>> responses) {
+        if (responses == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Integer> retryIndexes = new ArrayList<>();
+        List<BatchedOperation> retryBatch = new ArrayList<>();
+        List<byte[]> retryBodies = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            BatchedOperation entry = batch.get(i);
+            GraphQLOperation operation = entry.operation;
+            String persistedError = persistedQueryError(responses.get(i).getErrors());
+            if (persistedError == null) {
+                continue;
+            }
+            if ("PersistedQueryNotFound".equals(persistedError)) {
+                retryBodies.add(operation.registeringBody(entry.variables));
+            } else {
+                operation.markPersistedQueriesUnsupported();
+                retryBodies.add(operation.plainBody(entry.variables));
+            }
+            retryIndexes.add(i);
+            retryBatch.add(entry);
+        }
+        if (retryIndexes.isEmpty()) {
+            return CompletableFuture.completedFuture(responses);
+        }
+        return postBatch(endpoint, token, retryBodies, retryBatch).thenCompose(retried -> {
+            if (retried == null) {
+                // The first batch went through, so only the retries need sending one by one
+                return retrySingly(endpoint, token, retryIndexes, retryBatch, responses);
+            }
+            for (int i = 0; i < retryIndexes.size(); i++) {
+                responses.set(retryIndexes.get(i), retried.get(i));
+            }
+            return CompletableFuture.completedFuture(responses);
+        });
+    }
+
+    private CompletableFuture<List<JsonResponseDecoder.GraphQLResponse<?>>> retrySingly(
+            String endpoint, String token, List<Integer> retryIndexes, List<BatchedOperation> retryBatch,
+            List<JsonResponseDecoder.GraphQLResponse<?>> responses) {
+        CompletableFuture<?>[] singles = new CompletableFuture<?>[retryBatch.size()];
+        for (int i = 0; i < retryBatch.size(); i++) {
+            BatchedOperation entry = retryBatch.get(i);
+            int index = retryIndexes.get(i);
+            singles[i] = sendFull(endpoint, token, entry.operation, entry.variables, entry.dataField, entry.type)
+                    .thenAccept(response -> responses.set(index, response));
+        }
+        return CompletableFuture.allOf(singles).thenApply(ignored -> responses);
+    }
+
+    private CompletableFuture<List<JsonResponseDecoder.GraphQLResponse<?>>> postBatch(String endpoint, String token,
+                                                                                      List<byte[]> bodies,
+                                                                                      List<BatchedOperation> batch) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        for (int i = 0; i < bodies.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            body.writeBytes(bodies.get(i));
+        }
+        body.write(']');
+
+        List<String> dataFields = new ArrayList<>(batch.size());
+        List<Class<?>> types = new ArrayList<>(batch.size());
+        for (BatchedOperation entry : batch) {
+            dataFields.add(entry.dataField);
+            types.add(entry.type);
+        }
+
+        return post(endpoint, token, body.toByteArray()).thenApplyAsync(response -> {
+            if (response.statusCode() != 200) {
+                close(response);
+            }
+            if (response.statusCode() == 400 || response.statusCode() == 415) {
+                log.info("Batched request rejected (HTTP {})", response.statusCode());
+                return null;
+            }
+            if (response.statusCode() == 401) {
+                throw new CompletionException(new UnauthorizedException(token));
+            }
+            if (response.statusCode() != 200) {
+                throw new CompletionException(new IOException("Batched request failed, status: " + response.statusCode()));
+            }
+            try {
+                return JsonResponseDecoder.readGraphQLBatch(objectMapper, response.body(), dataFields, types);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, decodeExecutor);
+    }
+
+    // Completes once the headers are in; the body is read from the stream by the caller
+    private CompletableFuture<HttpResponse<InputStream>> post(String endpoint, String token, byte[] body) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .header("Accept", "*/*")
+                .header("Accept-Language", "en")
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .header("Origin", "https://aseko.cloud")
+                .header("Referer", "https://aseko.cloud/")
+                .header("Sec-Fetch-Dest", "empty")
+                .header("Sec-Fetch-Mode", "cors")
+                .header("Sec-Fetch-Site", "same-site")
+                .header("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/133.0.0.0 Safari/537.36")
+                .header("X-App-Name", "pool-live")
+                .header("X-App-Version", "4.2.0")
+                .header("X-Mode", "production")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Runs {@code call} with the current token. If the server answers 401, the token is
+     * invalidated and the call runs once more with a freshly obtained one.
+     */
+    private <R> CompletableFuture<R> withAuthRetry(Function<String, CompletableFuture<R>> call) {
+        return authService.getAuthTokenAsync().thenCompose(token -> {
+            requireToken(token);
+            return call.apply(token);
+        }).exceptionallyCompose(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (!(cause instanceof UnauthorizedException)) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            authService.invalidateToken(((UnauthorizedException) cause).token);
+            return authService.getAuthTokenAsync().thenCompose(token -> {
+                requireToken(token);
+                return call.apply(token);
+            });
+        });
+    }
+
+    // Statuses servers use for hash-only requests they will never understand
+    private static boolean rejectsPersistedQueries(int statusCode) {
+        return statusCode == 400 || statusCode == 404 || statusCode == 405;
+    }
+
+    private <T> JsonResponseDecoder.GraphQLResponse<T> decode(InputStream body, String dataField, Class<T> type) {
+        try {
+            return JsonResponseDecoder.readGraphQL(objectMapper, body, dataField, type);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    // Closing an unread body releases the connection instead of waiting for the rest of it
+    private static void close(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    // The start of an error body, for the log line
+    private static String errorBody(HttpResponse<InputStream> response) {
+        try (InputStream in = response.body()) {
+            return new String(in.readNBytes(2048), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "<unreadable: " + e.getMessage() + ">";
+        }
+    }
+
+    private static void requireToken(String token) {
+        if (token == null || token.isEmpty()) {
+            throw new CompletionException(new IOException("Authentication required"));
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for GraphQL response", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Returns PersistedQueryNotFound or PersistedQueryNotSupported if the errors report one,
+     * matching both the message and the extensions.code spelling servers use.
+     */
+    private static String persistedQueryError(JsonNode errors) {
+        if (errors == null || !errors.isArray()) {
+            return null;
+        }
+        for (JsonNode error : errors) {
+            String message = error.path("message").asText();
+            String code = error.path("extensions").path("code").asText();
+            if ("PersistedQueryNotFound".equals(message) || "PERSISTED_QUERY_NOT_FOUND".equals(code)) {
+                return "PersistedQueryNotFound";
+            }
+            if ("PersistedQueryNotSupported".equals(message) || "PERSISTED_QUERY_NOT_SUPPORTED".equals(code)) {
+                return "PersistedQueryNotSupported";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The server rejected {@code token}; {@link #withAuthRetry} logs in again and retries once.
+     */
+    static final class UnauthorizedException extends IOException {
+        final String token;
+
+        UnauthorizedException(String token) {
+            super("Unauthorized (HTTP 401)");
+            this.token = token;
+        }
+    }
+
+    /**
+     * One operation of a batch, with its variables already serialized.
+     */
+    static final class BatchedOperation {
+        final GraphQLOperation operation;
+        final byte[] variables;
+        final String dataField;
+        final Class<?> type;
+
+        BatchedOperation(GraphQLOperation operation, byte[] variables, String dataField, Class<?> type) {
+            this.operation = operation;
+            this.variables = variables;
+            this.dataField = dataField;
+            this.type = type;
+        }
+    }
+}
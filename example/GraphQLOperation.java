@@ -0,0 +1,99 @@
+package com.example.asekoflowmonitor.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A GraphQL document loaded once at startup, with the invariant parts of its request body
+ * already serialized. Per call only the variables are written and spliced in.
+ *
+ * <p>Three envelopes are kept: hash-only for Automatic Persisted Queries, query plus hash to
+ * register the query after a PersistedQueryNotFound, and the plain query for servers without
+ * persisted query support.
+ */
+public final class GraphQLOperation {
+
+    private static final byte[] SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL_VARIABLES = "null".getBytes(StandardCharsets.UTF_8);
+
+    private final String name;
+    private final String document;
+    private final String sha256Hash;
+    private final byte[] persistedPrefix;
+    private final byte[] registeringPrefix;
+    private final byte[] plainPrefix;
+    private volatile boolean persistedQueriesSupported = true;
+
+    GraphQLOperation(String name, String document, String quotedName, String quotedDocument) {
+        this.name = name;
+        this.document = document;
+        this.sha256Hash = sha256Hex(document);
+        String extensions = "\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\"" + sha256Hash + "\"}}";
+        this.persistedPrefix = utf8("{\"operationName\":" + quotedName + "," + extensions + ",\"variables\":");
+        this.registeringPrefix = utf8("{\"operationName\":" + quotedName + ",\"query\":" + quotedDocument
+                + "," + extensions + ",\"variables\":");
+        this.plainPrefix = utf8("{\"operationName\":" + quotedName + ",\"query\":" + quotedDocument + ",\"variables\":");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDocument() {
+        return document;
+    }
+
+    public String getSha256Hash() {
+        return sha256Hash;
+    }
+
+    /**
+     * False once the server has answered that it does not support persisted queries.
+     */
+    public boolean isPersistedQueriesSupported() {
+        return persistedQueriesSupported;
+    }
+
+    void markPersistedQueriesUnsupported() {
+        persistedQueriesSupported = false;
+    }
+
+    byte[] persistedBody(byte[] variables) {
+        return concat(persistedPrefix, variables);
+    }
+
+    byte[] registeringBody(byte[] variables) {
+        return concat(registeringPrefix, variables);
+    }
+
+    byte[] plainBody(byte[] variables) {
+        return concat(plainPrefix, variables);
+    }
+
+    private static byte[] concat(byte[] prefix, byte[] variables) {
+        byte[] vars = variables != null ? variables : NULL_VARIABLES;
+        byte[] body = Arrays.copyOf(prefix, prefix.length + vars.length + SUFFIX.length);
+        System.arraycopy(vars, 0, body, prefix.length, vars.length);
+        System.arraycopy(SUFFIX, 0, body, prefix.length + vars.length, SUFFIX.length);
+        return body;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String sha256Hex(String document) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(utf8(document));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.asekoflowmonitor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads every classpath:graphql/*.graphql document once at startup. The operation name is the
+ * file name, e.g. graphql/UnitList.graphql holds the UnitList query and its fragments.
+ */
+@Component
+public class GraphQLOperationRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphQLOperationRegistry.class);
+
+    private static final String LOCATION = "classpath*:graphql/*.graphql";
+
+    private final Map<String, GraphQLOperation> operations = new ConcurrentHashMap<>();
+
+    public GraphQLOperationRegistry() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+                String fileName = resource.getFilename();
+                if (fileName == null) {
+                    continue;
+                }
+                String name = fileName.substring(0, fileName.length() - ".graphql".length());
+                String document = StreamUtils.copyToString(resource.getInputStream(), StandardCharsets.UTF_8).trim();
+                operations.put(name, new GraphQLOperation(name, document,
+                        objectMapper.writeValueAsString(name), objectMapper.writeValueAsString(document)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load GraphQL operations", e);
+        }
+        log.info("Loaded {} GraphQL operation(s): {}", operations.size(), operations.keySet());
+    }
+
+    /**
+     * Returns the named operation; an unknown name is a programming error.
+     */
+    public GraphQLOperation get(String name) {
+        GraphQLOperation operation = operations.get(name);
+        if (operation == null) {
+            throw new IllegalArgumentException("Unknown GraphQL operation: " + name);
+        }
+        return operation;
+    }
+}
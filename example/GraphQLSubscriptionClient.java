@@ -0,0 +1,426 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.config.AsekoConfig;
+import com.example.asekoflowmonitor.config.AsekoEndpoints;
+import com.example.asekoflowmonitor.model.Unit;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Owns the single graphql-ws connection to the Aseko cloud and multiplexes one
+ * UnitUpdates subscription per unit over it, each under its own operation id.
+ * Incoming data frames are routed to their unit's handlers by the id string as sent,
+ * without parsing it. Ids are never reused, so a late frame of a stopped operation
+ * cannot be mistaken for another unit's.
+ */
+@Service
+@DependsOn("unitUpdatePipeline")
+public class GraphQLSubscriptionClient {
+
+    private static final Logger log = LoggerFactory.getLogger(GraphQLSubscriptionClient.class);
+    // Per-frame failures repeat for every frame; log each kind once per interval with a count
+    private static final LogSampler frameErrors = new LogSampler(10, TimeUnit.SECONDS);
+
+    private final AsekoConfig asekoConfig;
+    private final AsekoEndpoints endpoints;
+    private final AsekoMetrics metrics;
+    private final AuthService authService;
+    private final ReconnectSupervisor reconnectSupervisor;
+    private final GraphQLOperation unitUpdates;
+    private final ObjectMapper objectMapper;
+    // Built once; binds payload.data.unit of each frame straight into a Unit
+    private final ObjectReader unitReader;
+
+    private volatile WebSocketClient client;
+    private volatile boolean acknowledged = false;
+    private volatile boolean shuttingDown = false;
+
+    // Keyed by the operation id as sent; written only under the monitor, read lock-free by the socket reader thread
+    private final Map<String, Subscription> subscriptionsById = new ConcurrentHashMap<>();
+    // Guarded by the monitor
+    private final Map<String, Subscription> subscriptionsByUnit = new HashMap<>();
+    private int nextOperationId = 1;
+
+    @Autowired
+    public GraphQLSubscriptionClient(AsekoConfig asekoConfig, AuthService authService,
+                                     ReconnectSupervisor reconnectSupervisor,
+                                     GraphQLOperationRegistry operationRegistry, AsekoEndpoints endpoints,
+                                     AsekoMetrics metrics) {
+        this.asekoConfig = asekoConfig;
+        this.endpoints = endpoints;
+        this.metrics = metrics;
+        this.authService = authService;
+        this.reconnectSupervisor = reconnectSupervisor;
+        this.unitUpdates = operationRegistry.get("UnitUpdates");
+        this.objectMapper = new ObjectMapper();
+        this.unitReader = objectMapper.readerFor(Unit.class);
+    }
+
+    // Destroyed before the pipeline (see @DependsOn), so no frames arrive while it drains
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        WebSocketClient current = client;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Opens the shared connection unless it is already open or connecting.
+     * Returns false if no connection attempt could be started. May log in first, so call it
+     * from a background thread; the login runs without holding this client's monitor, so
+     * subscribers and the socket reader are never stuck behind it.
+     */
+    public boolean connect() {
+        if (isOpenOrConnecting()) {
+            return true;
+        }
+        String token = authService.getAuthToken();
+        if (token == null || token.isEmpty()) {
+            log.warn("Cannot connect to WebSocket: not authenticated");
+            return false;
+        }
+        return openSocket(token);
+    }
+
+    private boolean isOpenOrConnecting() {
+        WebSocketClient current = client;
+        return current != null && !current.isClosed();
+    }
+
+    // Only the socket swap is synchronized; connect() on the library client does not block
+    private synchronized boolean openSocket(String token) {
+        if (isOpenOrConnecting()) {
+            // Another caller connected while we were getting the token
+            return true;
+        }
+
+        try {
+            log.info("Connecting to GraphQL WebSocket url={}", endpoints.getGraphqlWsUrl());
+
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Authorization", "Bearer " + token);
+            headers.put("Accept", "*/*");
+            headers.put("Accept-Language", "en-GB,en;q=0.9");
+            headers.put("Origin", "https://aseko.cloud");
+            headers.put("Referer", "https://aseko.cloud/");
+            headers.put("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36");
+
+            acknowledged = false;
+            client = new WebSocketClient(new URI(endpoints.getGraphqlWsUrl()), headers) {
+                @Override
+                public void onOpen(ServerHandshake handshake) {
+                    log.info("WebSocket connection established status={}", handshake.getHttpStatus());
+                    sendConnectionInit(this, token);
+                }
+
+                @Override
+                public void onMessage(String message) {
+                    handleMessage(message);
+                }
+
+                @Override
+                public void onClose(int code, String reason, boolean remote) {
+                    log.info("WebSocket connection closed code={} reason={} remote={}", code, reason, remote);
+                    boolean wasAcknowledged = acknowledged;
+                    acknowledged = false;
+                    if (shuttingDown) {
+                        return;
+                    }
+
+                    if (!wasAcknowledged) {
+                        // Handshake or connection_init never completed, that attempt failed
+                        reconnectSupervisor.recordFailure();
+                    }
+                    if (!wasAcknowledged || isAuthFailure(code)) {
+                        // The token may be what got us rejected, log in again before the next attempt
+                        authService.invalidateToken();
+                    }
+                    reconnectSupervisor.scheduleReconnect(GraphQLSubscriptionClient.this::reconnect);
+                }
+
+                @Override
+                public void onError(Exception ex) {
+                    log.warn("WebSocket error: {}", ex.getMessage());
+                }
+            };
+            client.connect();
+            return true;
+        } catch (Exception e) {
+            log.error("Error connecting to WebSocket", e);
+            return false;
+        }
+    }
+
+    private boolean reconnect() {
+        if (shuttingDown) {
+            return true;
+        }
+        log.info("Attempting to reconnect WebSocket");
+        // getAuthToken() logs in again if the token expired or was invalidated
+        return connect();
+    }
+
+    private static boolean isAuthFailure(int closeCode) {
+        return closeCode == 4401 || closeCode == 4403 || closeCode == 1008;
+    }
+
+    public boolean isConnected() {
+        WebSocketClient current = client;
+        return current != null && current.isOpen() && acknowledged;
+    }
+
+    /**
+     * Adds a handler for UnitUpdates frames of the given unit. The first handler for a unit
+     * starts its subscription; later handlers share it. Handlers receive the unit id the
+     * subscription was opened for, not the id in the frame, and the bound "unit".
+     */
+    public synchronized void subscribe(String unitId, BiConsumer<String, Unit> handler) {
+        if (unitId == null || unitId.isEmpty()) {
+            return;
+        }
+        Subscription subscription = subscriptionsByUnit.get(unitId);
+        if (subscription == null) {
+            subscription = new Subscription(nextOperationId++, unitId, startMessage(nextOperationId - 1, unitId));
+            subscriptionsByUnit.put(unitId, subscription);
+            subscriptionsById.put(Integer.toString(subscription.operationId), subscription);
+
+            if (isConnected()) {
+                sendStart(client, subscription);
+            }
+            log.info("Subscribed unit={} operation={}", unitId, subscription.operationId);
+        }
+        subscription.handlers.addIfAbsent(handler);
+    }
+
+    /**
+     * Stops the subscription for a unit and drops all of its handlers.
+     */
+    public synchronized void unsubscribe(String unitId) {
+        Subscription subscription = subscriptionsByUnit.remove(unitId);
+        if (subscription == null) {
+            return;
+        }
+        subscriptionsById.remove(Integer.toString(subscription.operationId));
+
+        if (isConnected()) {
+            send(client, operationMessage(subscription.operationId, "stop"));
+        }
+        log.info("Unsubscribed unit={}", unitId);
+    }
+
+    public synchronized boolean isSubscribed(String unitId) {
+        return subscriptionsByUnit.containsKey(unitId);
+    }
+
+    // Package-private so the subscription frame benchmarks can drive it without a socket
+    void handleMessage(String message) {
+        long parseStart = System.nanoTime();
+        try (JsonParser parser = objectMapper.getFactory().createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            String type = null;
+            String id = null;
+            Unit unit = null;
+            JsonNode payload = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("type".equals(field)) {
+                    type = parser.getValueAsString();
+                } else if ("id".equals(field)) {
+                    id = parser.getValueAsString();
+                } else if ("payload".equals(field) && "data".equals(type) && token == JsonToken.START_OBJECT) {
+                    // Servers send type before payload, so data frames never become a tree
+                    unit = readUnit(parser);
+                } else if ("payload".equals(field)) {
+                    payload = objectMapper.readTree(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (unit == null && "data".equals(type) && payload != null && payload.path("data").path("unit").isObject()) {
+                unit = unitReader.readValue(payload.path("data").path("unit"));
+            }
+            metrics.recordFrameParse(System.nanoTime() - parseStart);
+            metrics.frameReceived(type != null ? type : "other");
+
+            if ("data".equals(type)) {
+                Subscription subscription = lookup(id);
+                if (subscription != null && unit != null) {
+                    subscription.dispatch(unit);
+                }
+            } else if ("connection_ack".equals(type)) {
+                log.info("Connection acknowledged, started subscriptions={}", acknowledgeAndReplay());
+                reconnectSupervisor.recordSuccess();
+            } else if ("error".equals(type)) {
+                log.warn("Subscription error operation={} payload={}", id, payload);
+            } else if ("complete".equals(type)) {
+                log.info("Subscription completed by server operation={}", id);
+            }
+        } catch (Exception e) {
+            long suppressed = frameErrors.tryAcquire("parse");
+            if (suppressed >= 0) {
+                log.warn("Error processing WebSocket message: {} (suppressed={})", e.getMessage(), suppressed);
+            }
+        }
+    }
+
+    /**
+     * Binds payload.data.unit of a data frame, skipping everything else in the payload.
+     */
+    private Unit readUnit(JsonParser parser) throws IOException {
+        Unit unit = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("data".equals(field) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String dataField = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.START_OBJECT && "unit".equals(dataField)) {
+                        unit = unitReader.readValue(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return unit;
+    }
+
+    private Subscription lookup(String operationId) {
+        return operationId != null ? subscriptionsById.get(operationId) : null;
+    }
+
+    /**
+     * Marks the connection acknowledged and starts every known subscription in one step under the
+     * monitor, so a concurrent subscribe() either lands in the replay or sends its own start, never both.
+     */
+    private synchronized int acknowledgeAndReplay() {
+        acknowledged = true;
+        for (Subscription subscription : subscriptionsByUnit.values()) {
+            sendStart(client, subscription);
+        }
+        return subscriptionsByUnit.size();
+    }
+
+    private void sendConnectionInit(WebSocketClient socket, String token) {
+        try {
+            ObjectNode initMessage = objectMapper.createObjectNode();
+            initMessage.put("type", "connection_init");
+
+            ObjectNode payload = objectMapper.createObjectNode();
+            ObjectNode headers = objectMapper.createObjectNode();
+            headers.put("Authorization", "Bearer " + token);
+            headers.put("X-App-Name", "pool-live");
+            headers.put("X-App-Version", "4.2.0");
+            headers.put("X-Mode", "production");
+            headers.put("X-Cloud", asekoConfig.getCloudId());
+
+            payload.set("headers", headers);
+            initMessage.set("payload", payload);
+
+            send(socket, initMessage);
+        } catch (Exception e) {
+            log.warn("Error sending connection init: {}", e.getMessage());
+        }
+    }
+
+    private void sendStart(WebSocketClient socket, Subscription subscription) {
+        try {
+            if (socket != null && socket.isOpen()) {
+                socket.send(subscription.startMessage);
+                metrics.frameSent("start");
+            }
+        } catch (Exception e) {
+            log.warn("Error sending start message: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The start frame never changes for a unit, so it is built once from the registry's
+     * pre-serialized UnitUpdates envelope and replayed as-is after every reconnect.
+     */
+    private String startMessage(int operationId, String unitId) {
+        try {
+            byte[] variables = objectMapper.writeValueAsBytes(Collections.singletonMap("unitId", unitId));
+            return "{\"id\":\"" + operationId + "\",\"type\":\"start\",\"payload\":"
+                    + new String(unitUpdates.plainBody(variables), StandardCharsets.UTF_8) + "}";
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectNode operationMessage(int operationId, String type) {
+        ObjectNode message = objectMapper.createObjectNode();
+        message.put("id", Integer.toString(operationId));
+        message.put("type", type);
+        return message;
+    }
+
+    private void send(WebSocketClient socket, ObjectNode message) {
+        try {
+            if (socket != null && socket.isOpen()) {
+                socket.send(objectMapper.writeValueAsString(message));
+                metrics.frameSent(message.path("type").asText());
+            }
+        } catch (Exception e) {
+            log.warn("Error sending {} message: {}", message.path("type").asText(), e.getMessage());
+        }
+    }
+
+    private static final class Subscription {
+        final int operationId;
+        final String unitId;
+        final String startMessage;
+        final CopyOnWriteArrayList<BiConsumer<String, Unit>> handlers = new CopyOnWriteArrayList<>();
+
+        Subscription(int operationId, String unitId, String startMessage) {
+            this.operationId = operationId;
+            this.unitId = unitId;
+            this.startMessage = startMessage;
+        }
+
+        void dispatch(Unit unit) {
+            for (BiConsumer<String, Unit> handler : handlers) {
+                try {
+                    handler.accept(unitId, unit);
+                } catch (Exception e) {
+                    long suppressed = frameErrors.tryAcquire("handler:" + unitId);
+                    if (suppressed >= 0) {
+                        log.warn("Error handling update unit={}: {} (suppressed={})", unitId, e.getMessage(), suppressed);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.asekoflowmonitor.controller;
+
+import com.example.asekoflowmonitor.history.MeasurementRollup;
+import com.example.asekoflowmonitor.history.MeasurementStore;
+import com.example.asekoflowmonitor.history.Resolution;
+import com.example.asekoflowmonitor.history.RollupBucket;
+import com.example.asekoflowmonitor.history.SeriesData;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Controller
+public class HistoryController {
+
+    private static final int DEFAULT_MAX_POINTS = 1000;
+    private static final int MAX_MAX_POINTS = 10000;
+
+    private final MeasurementStore measurementStore;
+    private final MeasurementRollup measurementRollup;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public HistoryController(MeasurementStore measurementStore, MeasurementRollup measurementRollup) {
+        this.measurementStore = measurementStore;
+        this.measurementRollup = measurementRollup;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Returns stored measurements for a unit per metric. Defaults to the last 24 hours and all
+     * metrics; from/to are epoch millis. Raw points [timestamp, value] are returned only when
+     * every requested metric has at most maxPoints samples in the range; otherwise the finest
+     * rollup that fits is used and points become [bucketStart, min, max, avg, last]. Ranges longer
+     * than maxPoints days merge consecutive day buckets, so a point may span several days. maxPoints
+     * is capped at 10000.
+     */
+    @GetMapping("/api/history/{unitId}")
+    @ResponseBody
+    public ResponseEntity<JsonNode> getHistory(@PathVariable String unitId,
+                                               @RequestParam(required = false) String metric,
+                                               @RequestParam(required = false) Long from,
+                                               @RequestParam(required = false) Long to,
+                                               @RequestParam(required = false) Integer maxPoints) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - TimeUnit.HOURS.toMillis(24);
+        if (start > end) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<String> metrics = MeasurementStore.METRICS;
+        if (metric != null && !metric.isEmpty()) {
+            if (!MeasurementStore.METRICS.contains(metric)) {
+                return ResponseEntity.badRequest().build();
+            }
+            metrics = Collections.singletonList(metric);
+        }
+
+        int pointBudget = maxPoints != null && maxPoints > 0 ? Math.min(maxPoints, MAX_MAX_POINTS) : DEFAULT_MAX_POINTS;
+        Resolution resolution = Resolution.forRange(start, end, pointBudget);
+        if (resolution == null && rawExceedsBudget(unitId, metrics, start, end, pointBudget)) {
+            // Short range but a high sample rate; minute buckets fit since the range is under maxPoints minutes
+            resolution = Resolution.MINUTE;
+        }
+
+        ObjectNode result = objectMapper.createObjectNode();
+        result.put("unitId", unitId);
+        result.put("from", start);
+        result.put("to", end);
+        result.put("resolution", resolution != null ? resolution.getLabel() : "raw");
+        ObjectNode series = result.putObject("series");
+        for (String name : metrics) {
+            ArrayNode points = series.putArray(name);
+            if (resolution != null) {
+                addRollupPoints(points, downsample(measurementRollup.query(unitId, name, resolution, start, end), pointBudget));
+            } else {
+                addRawPoints(points, measurementStore.query(unitId, name, start, end));
+            }
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    private boolean rawExceedsBudget(String unitId, List<String> metrics, long start, long end, int pointBudget) {
+        for (String name : metrics) {
+            if (measurementStore.countAtMost(unitId, name, start, end) > pointBudget) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addRawPoints(ArrayNode points, SeriesData data) {
+        for (int i = 0; i < data.size(); i++) {
+            double value = data.valueAt(i);
+            if (Double.isFinite(value)) {
+                points.addArray().add(data.timestampAt(i)).add(value);
+            }
+        }
+    }
+
+    /**
+     * Merges runs of consecutive buckets so at most {@code maxPoints} remain. Only day buckets over
+     * very long ranges ever need this; finer resolutions are picked to fit.
+     */
+    private static List<RollupBucket> downsample(List<RollupBucket> buckets, int maxPoints) {
+        if (buckets.size() <= maxPoints) {
+            return buckets;
+        }
+        int groupSize = (buckets.size() + maxPoints - 1) / maxPoints;
+        List<RollupBucket> merged = new ArrayList<>(maxPoints);
+        for (int from = 0; from < buckets.size(); from += groupSize) {
+            int to = Math.min(from + groupSize, buckets.size());
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            long count = 0;
+            for (RollupBucket bucket : buckets.subList(from, to)) {
+                min = Math.min(min, bucket.getMin());
+                max = Math.max(max, bucket.getMax());
+                sum += bucket.getSum();
+                count += bucket.getCount();
+            }
+            merged.add(new RollupBucket(buckets.get(from).getStart(), min, max, sum, count, buckets.get(to - 1).getLast()));
+        }
+        return merged;
+    }
+
+    private void addRollupPoints(ArrayNode points, List<RollupBucket> buckets) {
+        for (RollupBucket bucket : buckets) {
+            points.addArray()
+                    .add(bucket.getStart())
+                    .add(bucket.getMin())
+                    .add(bucket.getMax())
+                    .add(bucket.getAvg())
+                    .add(bucket.getLast());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.asekoflowmonitor.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared, pooled HTTP client used for every call to the Aseko cloud.
+ * Connections are kept alive between requests so steady-state calls only
+ * pay a single round trip instead of a fresh TCP + TLS handshake.
+ *
+ * <p>GraphQL traffic goes through a second, non-blocking java.net.http client that
+ * negotiates HTTP/2 and multiplexes concurrent requests over one connection.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpClientConfig.class);
+
+    @Value("${aseko.http.max-total:40}")
+    private int maxTotal;
+
+    @Value("${aseko.http.max-per-route:10}")
+    private int maxPerRoute;
+
+    @Value("${aseko.http.graphql-max-per-route:20}")
+    private int graphqlMaxPerRoute;
+
+    @Value("${aseko.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${aseko.http.socket-timeout-ms:15000}")
+    private int socketTimeoutMs;
+
+    @Value("${aseko.http.connection-request-timeout-ms:2000}")
+    private int connectionRequestTimeoutMs;
+
+    @Value("${aseko.http.connection-ttl-seconds:300}")
+    private long connectionTtlSeconds;
+
+    @Value("${aseko.http.idle-eviction-seconds:30}")
+    private long idleEvictionSeconds;
+
+    @Value("${aseko.http.validate-after-inactivity-ms:2000}")
+    private int validateAfterInactivityMs;
+
+    @Value("${aseko.http.async-threads:4}")
+    private int asyncThreads;
+
+    // Kept out of the context on purpose: an Executor bean would replace Boot's default task executor
+    private ExecutorService asyncExecutor;
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient asekoHttpClient(AsekoEndpoints endpoints) {
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(connectionTtlSeconds, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        URI graphqlUri = endpoints.getGraphqlUri();
+        int graphqlPort = graphqlUri.getPort() != -1 ? graphqlUri.getPort() : "https".equals(graphqlUri.getScheme()) ? 443 : 80;
+        connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost(graphqlUri.getHost(), graphqlPort, graphqlUri.getScheme())),
+                graphqlMaxPerRoute);
+        connectionManager.setValidateAfterInactivity(validateAfterInactivityMs);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(socketTimeoutMs)
+                .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+                .build();
+
+        log.info("Creating pooled Aseko HTTP client maxTotal={} maxPerRoute={} ttlSeconds={}",
+                maxTotal, maxPerRoute, connectionTtlSeconds);
+
+        // The client owns the connection manager, so closing the bean also shuts the pool down
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictionSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Non-blocking client for GraphQL calls. Response callbacks run on a small daemon pool,
+     * never on the caller's thread.
+     */
+    @Bean
+    public HttpClient asekoAsyncHttpClient() {
+        AtomicInteger threadCount = new AtomicInteger();
+        asyncExecutor = Executors.newFixedThreadPool(asyncThreads, r -> {
+            Thread thread = new Thread(r, "aseko-http-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(asyncExecutor)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdownNow();
+        }
+    }
+}
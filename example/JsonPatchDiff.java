@@ -0,0 +1,87 @@
+package com.example.asekoflowmonitor.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Computes an RFC 6902 JSON Patch that turns one tree into another. Objects are compared
+ * field by field and arrays index by index (with adds/removes at the tail), which keeps
+ * patches small for pool data where a few measurements change between frames.
+ */
+final class JsonPatchDiff {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private JsonPatchDiff() {
+    }
+
+    static ArrayNode diff(JsonNode source, JsonNode target) {
+        ArrayNode patch = NODES.arrayNode();
+        diff("", source, target, patch);
+        return patch;
+    }
+
+    private static void diff(String path, JsonNode source, JsonNode target, ArrayNode patch) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (source.isObject() && target.isObject()) {
+            diffObjects(path, source, target, patch);
+        } else if (source.isArray() && target.isArray()) {
+            diffArrays(path, source, target, patch);
+        } else {
+            patch.add(operation("replace", path).set("value", target));
+        }
+    }
+
+    private static void diffObjects(String path, JsonNode source, JsonNode target, ArrayNode patch) {
+        Iterator<String> sourceFields = source.fieldNames();
+        while (sourceFields.hasNext()) {
+            String field = sourceFields.next();
+            if (!target.has(field)) {
+                patch.add(operation("remove", path + '/' + escape(field)));
+            }
+        }
+        Iterator<Map.Entry<String, JsonNode>> targetFields = target.fields();
+        while (targetFields.hasNext()) {
+            Map.Entry<String, JsonNode> field = targetFields.next();
+            String fieldPath = path + '/' + escape(field.getKey());
+            JsonNode sourceValue = source.get(field.getKey());
+            if (sourceValue == null) {
+                patch.add(operation("add", fieldPath).set("value", field.getValue()));
+            } else {
+                diff(fieldPath, sourceValue, field.getValue(), patch);
+            }
+        }
+    }
+
+    private static void diffArrays(String path, JsonNode source, JsonNode target, ArrayNode patch) {
+        int common = Math.min(source.size(), target.size());
+        for (int i = 0; i < common; i++) {
+            diff(path + '/' + i, source.get(i), target.get(i), patch);
+        }
+        // Remove from the end so earlier indexes stay valid while the patch is applied
+        for (int i = source.size() - 1; i >= common; i--) {
+            patch.add(operation("remove", path + '/' + i));
+        }
+        for (int i = common; i < target.size(); i++) {
+            patch.add(operation("add", path + "/-").set("value", target.get(i)));
+        }
+    }
+
+    private static ObjectNode operation(String op, String path) {
+        ObjectNode operation = NODES.objectNode();
+        operation.put("op", op);
+        operation.put("path", path);
+        return operation;
+    }
+
+    private static String escape(String field) {
+        return field.replace("~", "~0").replace("/", "~1");
+    }
+}
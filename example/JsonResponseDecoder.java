@@ -0,0 +1,169 @@
+package com.example.asekoflowmonitor.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes JSON responses straight from the entity stream, or from the body bytes the async
+ * client hands over. Only the fields a caller asks for are bound; everything else is skipped
+ * token by token, so a large response never becomes a String or a full tree. The stream is
+ * always read to the end so the connection can be reused.
+ */
+final class JsonResponseDecoder {
+
+    private JsonResponseDecoder() {
+    }
+
+    /**
+     * The selected field under "data" plus the top-level "errors" array, if any.
+     */
+    static final class GraphQLResponse<T> {
+        private final T data;
+        private final JsonNode errors;
+
+        GraphQLResponse(T data, JsonNode errors) {
+            this.data = data;
+            this.errors = errors;
+        }
+
+        T getData() {
+            return data;
+        }
+
+        JsonNode getErrors() {
+            return errors;
+        }
+
+        boolean hasErrors() {
+            return errors != null && errors.isArray() && errors.size() > 0;
+        }
+    }
+
+    /**
+     * Reads a GraphQL response and binds data.{dataField} to {@code type}. The data is null when
+     * the field is absent or null.
+     */
+    static <T> GraphQLResponse<T> readGraphQL(ObjectMapper objectMapper, byte[] body,
+                                              String dataField, Class<T> type) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            expectObject(parser);
+            return readGraphQLObject(objectMapper, parser, dataField, type);
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #readGraphQL(ObjectMapper, byte[], String, Class)}. Closes {@code body}.
+     */
+    static <T> GraphQLResponse<T> readGraphQL(ObjectMapper objectMapper, InputStream body,
+                                              String dataField, Class<T> type) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            expectObject(parser);
+            return readGraphQLObject(objectMapper, parser, dataField, type);
+        }
+    }
+
+    /**
+     * Reads an array-batched GraphQL response, binding element i's data.{dataFields[i]} to
+     * {@code types[i]}. Returns null when the server answered with a single object instead of
+     * an array, which is how servers without batching support report the request as invalid.
+     * Closes {@code body}.
+     */
+    static List<GraphQLResponse<?>> readGraphQLBatch(ObjectMapper objectMapper, InputStream body,
+                                                     List<String> dataFields, List<Class<?>> types) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                return null;
+            }
+            if (first != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array response");
+            }
+            List<GraphQLResponse<?>> responses = new ArrayList<>(dataFields.size());
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int index = responses.size();
+                if (index < dataFields.size()) {
+                    responses.add(readGraphQLObject(objectMapper, parser, dataFields.get(index), types.get(index)));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (responses.size() != dataFields.size()) {
+                throw new IOException("Batch returned " + responses.size() + " results for " + dataFields.size() + " operations");
+            }
+            return responses;
+        }
+    }
+
+    /**
+     * Reads one GraphQL response object the parser has just entered.
+     */
+    private static <T> GraphQLResponse<T> readGraphQLObject(ObjectMapper objectMapper, JsonParser parser,
+                                                            String dataField, Class<T> type) throws IOException {
+        T data = null;
+        JsonNode errors = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("data".equals(name) && token == JsonToken.START_OBJECT) {
+                data = readFieldOfObject(objectMapper, parser, dataField, type);
+            } else if ("errors".equals(name) && token == JsonToken.START_ARRAY) {
+                errors = objectMapper.readTree(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new GraphQLResponse<>(data, errors);
+    }
+
+    /**
+     * Reads a top-level field of a JSON object response, or null when it is absent or null.
+     */
+    static <T> T readField(ObjectMapper objectMapper, HttpEntity entity, String field, Class<T> type) throws IOException {
+        try (InputStream in = entity.getContent(); JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            expectObject(parser);
+            return readFieldOfObject(objectMapper, parser, field, type);
+        }
+    }
+
+    /**
+     * Reads a whole response as a tree, without going through a String first.
+     */
+    static JsonNode readTree(ObjectMapper objectMapper, HttpEntity entity) throws IOException {
+        try (InputStream in = entity.getContent()) {
+            return objectMapper.readTree(in);
+        }
+    }
+
+    /**
+     * Binds one field of the object the parser is inside of and skips the rest of it.
+     */
+    private static <T> T readFieldOfObject(ObjectMapper objectMapper, JsonParser parser,
+                                           String field, Class<T> type) throws IOException {
+        T value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (field.equals(name) && token != JsonToken.VALUE_NULL) {
+                value = objectMapper.readValue(parser, type);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return value;
+    }
+
+    private static void expectObject(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object response");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.asekoflowmonitor.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets one log line per key through each interval and counts the rest, so a message repeated
+ * for every frame (the same parse error, the same failing handler) costs a counter increment
+ * instead of a log event. Keys should come from a small set, such as a topic or a unit id.
+ */
+public final class LogSampler {
+
+    private final long intervalNanos;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public LogSampler(long interval, TimeUnit unit) {
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Returns -1 if this occurrence should not be logged. Otherwise returns how many occurrences
+     * of the key were skipped since the last one that was logged, to include in the message.
+     */
+    public long tryAcquire(String key) {
+        Window window = windows.computeIfAbsent(key, k -> new Window());
+        long now = System.nanoTime();
+        long next = window.nextAllowedNanos.get();
+        if (now - next >= 0 && window.nextAllowedNanos.compareAndSet(next, now + intervalNanos)) {
+            return window.suppressed.getAndSet(0);
+        }
+        window.suppressed.incrementAndGet();
+        return -1;
+    }
+
+    private static final class Window {
+        // Starts in the past so the first occurrence is always logged
+        final AtomicLong nextAllowedNanos = new AtomicLong(System.nanoTime() - 1);
+        final AtomicLong suppressed = new AtomicLong();
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.asekoflowmonitor.history;
+
+import com.example.asekoflowmonitor.model.Measurements;
+import com.example.asekoflowmonitor.service.LogSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming rollup stage next to {@link MeasurementStore}: every recorded sample updates the
+ * open min/max/avg/last bucket of each {@link Resolution}, so long-range history queries read
+ * a bounded number of pre-aggregated points instead of scanning raw samples.
+ */
+@Service
+public class MeasurementRollup {
+
+    private static final Logger log = LoggerFactory.getLogger(MeasurementRollup.class);
+
+    private final Map<String, RollupSeries> series = new ConcurrentHashMap<>();
+    private final Path rootDirectory;
+    // add() writes every resolution for each sample, so a failing file is reported per resolution, sampled
+    private final LogSampler writeErrors = new LogSampler(30, TimeUnit.SECONDS);
+
+    public MeasurementRollup(@Value("${aseko.history.dir:data/history}") String rootDirectory) {
+        this.rootDirectory = Paths.get(rootDirectory);
+    }
+
+    @PreDestroy
+    public void close() {
+        for (RollupSeries rollupSeries : series.values()) {
+            try {
+                rollupSeries.close();
+            } catch (IOException e) {
+                log.warn("Error closing rollup series: {}", e.getMessage());
+            }
+        }
+        series.clear();
+    }
+
+    /**
+     * Writes every open bucket out every {@code aseko.history.checkpoint-interval-ms}, so a crash
+     * loses at most that interval of samples from each rollup instead of a whole open bucket
+     * (up to a day at {@link Resolution#DAY}).
+     */
+    @Scheduled(fixedDelayString = "${aseko.history.checkpoint-interval-ms:10000}")
+    public void checkpoint() {
+        for (RollupSeries rollupSeries : series.values()) {
+            try {
+                rollupSeries.checkpoint();
+            } catch (IOException e) {
+                log.warn("Error checkpointing rollup series: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Folds every metric present in a subscription "measurements" block into the rollups.
+     */
+    public void record(String unitId, long timestamp, Measurements measurements) {
+        if (unitId == null || unitId.isEmpty() || measurements == null) {
+            return;
+        }
+        for (String metric : MeasurementStore.METRICS) {
+            Double value = measurements.get(metric);
+            if (value != null) {
+                add(unitId, metric, timestamp, value);
+            }
+        }
+    }
+
+    public void add(String unitId, String metric, long timestamp, double value) {
+        for (Resolution resolution : Resolution.values()) {
+            try {
+                seriesFor(unitId, metric, resolution).add(timestamp, value);
+            } catch (IOException | UncheckedIOException e) {
+                long suppressed = writeErrors.tryAcquire(key(unitId, metric, resolution));
+                if (suppressed >= 0) {
+                    log.warn("Error rolling up {} for unit {}: {} (suppressed={})", metric, unitId, e.getMessage(), suppressed);
+                }
+                // The other resolutions live in their own files and may still be writable
+                continue;
+            }
+        }
+    }
+
+    public List<RollupBucket> query(String unitId, String metric, Resolution resolution, long from, long to) {
+        List<RollupBucket> buckets = new ArrayList<>();
+        RollupSeries rollupSeries = existingSeries(unitId, metric, resolution);
+        if (rollupSeries != null) {
+            rollupSeries.query(from, to, buckets);
+        }
+        return buckets;
+    }
+
+    private RollupSeries seriesFor(String unitId, String metric, Resolution resolution) {
+        return series.computeIfAbsent(key(unitId, metric, resolution), k -> {
+            try {
+                return RollupSeries.open(pathFor(unitId, metric, resolution), resolution);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private RollupSeries existingSeries(String unitId, String metric, Resolution resolution) {
+        RollupSeries rollupSeries = series.get(key(unitId, metric, resolution));
+        if (rollupSeries != null || !pathFor(unitId, metric, resolution).toFile().exists()) {
+            return rollupSeries;
+        }
+        try {
+            return seriesFor(unitId, metric, resolution);
+        } catch (UncheckedIOException e) {
+            log.warn("Error opening rollup series: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Path pathFor(String unitId, String metric, Resolution resolution) {
+        return rootDirectory.resolve(MeasurementStore.sanitize(unitId))
+                .resolve(MeasurementStore.sanitize(metric) + "." + resolution.getLabel() + ".rollup");
+    }
+
+    private static String key(String unitId, String metric, Resolution resolution) {
+        return unitId + '/' + metric + '/' + resolution.getLabel();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.asekoflowmonitor.history;
+
+import com.example.asekoflowmonitor.model.Measurements;
+import com.example.asekoflowmonitor.service.LogSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded, append-only store for pool measurements. Every metric of every unit is its own
+ * compressed {@link TimeSeries} file under {@code aseko.history.dir}, so no database server
+ * is needed and range queries only touch the blocks they overlap.
+ */
+@Service
+public class MeasurementStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MeasurementStore.class);
+
+    public static final List<String> METRICS =
+            Collections.unmodifiableList(Arrays.asList("ph", "rx", "cl", "temperature", "waterflow"));
+
+    private final Map<String, TimeSeries> series = new ConcurrentHashMap<>();
+    private final Path rootDirectory;
+    // append() runs on the pipeline thread for every sample; one line per series per interval at most
+    private final LogSampler writeErrors = new LogSampler(30, TimeUnit.SECONDS);
+    private final int samplesPerBlock;
+
+    public MeasurementStore(@Value("${aseko.history.dir:data/history}") String rootDirectory,
+                            @Value("${aseko.history.samples-per-block:1024}") int samplesPerBlock) {
+        this.rootDirectory = Paths.get(rootDirectory);
+        this.samplesPerBlock = samplesPerBlock;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (TimeSeries timeSeries : series.values()) {
+            try {
+                timeSeries.close();
+            } catch (IOException e) {
+                log.warn("Error closing measurement series: {}", e.getMessage());
+            }
+        }
+        series.clear();
+    }
+
+    /**
+     * Records every metric present in a subscription "measurements" block for the unit.
+     */
+    public void record(String unitId, long timestamp, Measurements measurements) {
+        if (unitId == null || unitId.isEmpty() || measurements == null) {
+            return;
+        }
+        for (String metric : METRICS) {
+            Double value = measurements.get(metric);
+            if (value != null) {
+                append(unitId, metric, timestamp, value);
+            }
+        }
+    }
+
+    public void append(String unitId, String metric, long timestamp, double value) {
+        try {
+            seriesFor(unitId, metric).append(timestamp, value);
+        } catch (IOException | UncheckedIOException e) {
+            long suppressed = writeErrors.tryAcquire(key(unitId, metric));
+            if (suppressed >= 0) {
+                log.warn("Error storing {} for unit {}: {} (suppressed={})", metric, unitId, e.getMessage(), suppressed);
+            }
+        }
+    }
+
+    /**
+     * Returns the samples of one metric within [from, to], both in epoch millis.
+     */
+    public SeriesData query(String unitId, String metric, long from, long to) {
+        SeriesData result = new SeriesData();
+        TimeSeries timeSeries = existingSeries(unitId, metric);
+        if (timeSeries != null) {
+            timeSeries.query(from, to, result);
+        }
+        return result;
+    }
+
+    /**
+     * Upper bound on the samples of one metric within [from, to], read from the block index
+     * without decoding, so callers can decide between raw samples and a rollup cheaply.
+     */
+    public long countAtMost(String unitId, String metric, long from, long to) {
+        TimeSeries timeSeries = existingSeries(unitId, metric);
+        return timeSeries != null ? timeSeries.countAtMost(from, to) : 0;
+    }
+
+    /**
+     * Checkpoints every series every {@code aseko.history.checkpoint-interval-ms}. Sealed blocks
+     * live in the mapped file; the block still filling up is held on the heap until then, so a
+     * crash loses at most this interval of samples per series.
+     */
+    @Scheduled(fixedDelayString = "${aseko.history.checkpoint-interval-ms:10000}")
+    public void checkpoint() {
+        for (TimeSeries timeSeries : series.values()) {
+            try {
+                timeSeries.checkpoint();
+            } catch (IOException e) {
+                log.warn("Error checkpointing measurement series: {}", e.getMessage());
+            }
+        }
+    }
+
+    public void flush() {
+        for (TimeSeries timeSeries : series.values()) {
+            try {
+                timeSeries.flush();
+            } catch (IOException e) {
+                log.warn("Error flushing measurement series: {}", e.getMessage());
+            }
+        }
+    }
+
+    private TimeSeries seriesFor(String unitId, String metric) {
+        return series.computeIfAbsent(key(unitId, metric), k -> {
+            try {
+                return TimeSeries.open(pathFor(unitId, metric), samplesPerBlock);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private TimeSeries existingSeries(String unitId, String metric) {
+        TimeSeries timeSeries = series.get(key(unitId, metric));
+        if (timeSeries != null || !pathFor(unitId, metric).toFile().exists()) {
+            return timeSeries;
+        }
+        // Written by a previous run but not opened yet in this one
+        try {
+            return seriesFor(unitId, metric);
+        } catch (UncheckedIOException e) {
+            log.warn("Error opening measurement series: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Path pathFor(String unitId, String metric) {
+        return rootDirectory.resolve(sanitize(unitId)).resolve(sanitize(metric) + ".series");
+    }
+
+    private static String key(String unitId, String metric) {
+        return unitId + '/' + metric;
+    }
+
+    // Shared with MeasurementRollup, whose files sit in the same per-unit directories
+    static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+}
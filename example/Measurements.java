@@ -0,0 +1,44 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * The "measurements" block of a unit update. Absent values are null.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Measurements(
+        Double ph,
+        Double rx,
+        Double cl,
+        Double temperature,
+        @JsonDeserialize(using = NumberOrFlagDeserializer.class) Double waterflow) {
+
+    @JsonIgnore
+    public boolean isFlowing() {
+        return waterflow != null && waterflow > 0;
+    }
+
+    /**
+     * Value of a metric by its GraphQL field name, or null if unknown or absent.
+     */
+    public Double get(String metric) {
+        switch (metric) {
+            case "ph":
+                return ph;
+            case "rx":
+                return rx;
+            case "cl":
+                return cl;
+            case "temperature":
+                return temperature;
+            case "waterflow":
+                return waterflow;
+            default:
+                return null;
+        }
+    }
+}
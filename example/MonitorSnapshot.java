@@ -0,0 +1,30 @@
+package com.example.asekoflowmonitor.model;
+
+/**
+ * Immutable view of what the read endpoints serve together: the unit list, the selected unit and
+ * the flow status of the configured unit. A new snapshot is built for every change and swapped in
+ * as a whole, so a reader holding one always sees a consistent set. {@code version} increases by
+ * one per change and {@code updatedAt} is when it was made. The latest frame of each unit changes
+ * at frame rate and is kept per unit outside the snapshot, see {@link UnitState}.
+ */
+public record MonitorSnapshot(
+        long version,
+        long updatedAt,
+        UnitList unitList,
+        UnitDetail selectedUnit,
+        boolean flowStatus) {
+
+    public static final MonitorSnapshot EMPTY = new MonitorSnapshot(0, 0, null, null, false);
+
+    public MonitorSnapshot withUnitList(UnitList unitList, long now) {
+        return new MonitorSnapshot(version + 1, now, unitList, selectedUnit, flowStatus);
+    }
+
+    public MonitorSnapshot withSelectedUnit(UnitDetail selectedUnit, long now) {
+        return new MonitorSnapshot(version + 1, now, unitList, selectedUnit, flowStatus);
+    }
+
+    public MonitorSnapshot withFlowStatus(boolean flowStatus, long now) {
+        return new MonitorSnapshot(version + 1, now, unitList, selectedUnit, flowStatus);
+    }
+}
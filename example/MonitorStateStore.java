@@ -0,0 +1,77 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.MonitorSnapshot;
+import com.example.asekoflowmonitor.model.Unit;
+import com.example.asekoflowmonitor.model.UnitDetail;
+import com.example.asekoflowmonitor.model.UnitList;
+import com.example.asekoflowmonitor.model.UnitState;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the current {@link MonitorSnapshot}. Writers (the unit list walk, unit selection and the
+ * update pipeline) build a new snapshot from the current one and swap it in with a
+ * compare-and-set; readers just take the reference. Servlet threads therefore never lock and
+ * never see half of an update.
+ *
+ * <p>The latest frame of each unit is kept per unit instead of in the snapshot, so recording a
+ * frame costs one reference write however many units there are, not a copy of every unit.
+ */
+@Component
+public class MonitorStateStore {
+
+    private final AtomicReference<MonitorSnapshot> current = new AtomicReference<>(MonitorSnapshot.EMPTY);
+    private final Map<String, AtomicReference<UnitState>> units = new ConcurrentHashMap<>();
+    private final AtomicLong unitSequence = new AtomicLong();
+
+    /**
+     * The latest snapshot. Read it once per request and take every value from that one instance.
+     */
+    public MonitorSnapshot current() {
+        return current.get();
+    }
+
+    public MonitorSnapshot setUnitList(UnitList unitList) {
+        return update(snapshot -> snapshot.withUnitList(unitList, System.currentTimeMillis()));
+    }
+
+    public MonitorSnapshot setSelectedUnit(UnitDetail selectedUnit) {
+        return update(snapshot -> snapshot.withSelectedUnit(selectedUnit, System.currentTimeMillis()));
+    }
+
+    public MonitorSnapshot setFlowStatus(boolean flowStatus) {
+        return update(snapshot -> snapshot.flowStatus() == flowStatus
+                ? snapshot : snapshot.withFlowStatus(flowStatus, System.currentTimeMillis()));
+    }
+
+    /**
+     * Records the latest frame of a unit. Frames without a unit id are not kept; returns null for them.
+     */
+    public UnitState recordUnit(String unitId, Unit unit, long receivedAt) {
+        if (unitId == null) {
+            return null;
+        }
+        UnitState state = new UnitState(unit, receivedAt, unitSequence.incrementAndGet());
+        // Only the first frame of a unit touches the map; later ones just replace the reference
+        units.computeIfAbsent(unitId, id -> new AtomicReference<>()).set(state);
+        return state;
+    }
+
+    /**
+     * The latest frame of a unit, or null if none has arrived yet.
+     */
+    public UnitState unit(String unitId) {
+        AtomicReference<UnitState> state = units.get(unitId);
+        return state != null ? state.get() : null;
+    }
+
+    // The function may run more than once if another writer wins the race, so it must not have side effects
+    private MonitorSnapshot update(UnaryOperator<MonitorSnapshot> change) {
+        return current.updateAndGet(change);
+    }
+}
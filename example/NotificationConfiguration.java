@@ -0,0 +1,25 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Warning thresholds for one measured value. The unit list only fills id and hasWarning.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NotificationConfiguration(
+        String id,
+        String type,
+        String name,
+        Boolean enabled,
+        Double lowWarningLevel,
+        Double highWarningLevel,
+        String color,
+        Double currentValue,
+        String suffix,
+        Boolean hasWarning,
+        List<Double> possibleWarningLevels) {
+}
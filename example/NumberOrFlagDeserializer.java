@@ -0,0 +1,30 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads a value the API sends either as a number or as a boolean flag (true = 1, false = 0).
+ */
+class NumberOrFlagDeserializer extends StdDeserializer<Double> {
+
+    NumberOrFlagDeserializer() {
+        super(Double.class);
+    }
+
+    @Override
+    public Double deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_TRUE) {
+            return 1.0;
+        }
+        if (token == JsonToken.VALUE_FALSE) {
+            return 0.0;
+        }
+        return context.readValue(parser, Double.class);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.asekoflowmonitor.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules reconnect attempts for the subscription socket on a single scheduler thread,
+ * using jittered exponential backoff. After too many consecutive failures the
+ * circuit opens and attempts pause for a cool-down period before trying again.
+ */
+@Component
+public class ReconnectSupervisor {
+
+    private static final Logger log = LoggerFactory.getLogger(ReconnectSupervisor.class);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ws-reconnect-supervisor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${aseko.reconnect.initial-delay-ms:1000}")
+    private long initialDelayMs;
+
+    @Value("${aseko.reconnect.max-delay-ms:60000}")
+    private long maxDelayMs;
+
+    @Value("${aseko.reconnect.failure-threshold:8}")
+    private int failureThreshold;
+
+    @Value("${aseko.reconnect.open-circuit-ms:300000}")
+    private long openCircuitMs;
+
+    private int consecutiveFailures = 0;
+    private long circuitOpenUntil = 0;
+    private ScheduledFuture<?> pendingAttempt;
+    private final AsekoMetrics metrics;
+
+    @Autowired
+    public ReconnectSupervisor(AsekoMetrics metrics) {
+        this.metrics = metrics;
+        metrics.gauge("aseko.ws.reconnect.consecutive_failures", "Failed reconnects since the last success",
+                this, ReconnectSupervisor::getConsecutiveFailures);
+        metrics.gauge("aseko.ws.reconnect.circuit_open", "1 while reconnects are suspended",
+                this, supervisor -> supervisor.isCircuitOpen() ? 1 : 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Schedules one reconnect attempt unless one is already pending. The attempt returns
+     * true once a connection was started; a false return or an exception counts as a failure.
+     */
+    public synchronized void scheduleReconnect(ReconnectAttempt attempt) {
+        if (scheduler.isShutdown() || (pendingAttempt != null && !pendingAttempt.isDone())) {
+            return;
+        }
+
+        long delay = nextDelayMs();
+        log.info("Scheduling WebSocket reconnect delayMs={} consecutiveFailures={}", delay, consecutiveFailures);
+        pendingAttempt = scheduler.schedule(() -> runAttempt(attempt), delay, TimeUnit.MILLISECONDS);
+        metrics.reconnectScheduled();
+    }
+
+    /**
+     * Called when the connection has been acknowledged; resets backoff and closes the circuit.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        circuitOpenUntil = 0;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            circuitOpenUntil = System.currentTimeMillis() + openCircuitMs;
+            log.warn("WebSocket reconnect circuit open for {} ms after {} failures", openCircuitMs, consecutiveFailures);
+        }
+    }
+
+    public synchronized boolean isCircuitOpen() {
+        return System.currentTimeMillis() < circuitOpenUntil;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    private void runAttempt(ReconnectAttempt attempt) {
+        boolean started;
+        try {
+            started = attempt.run();
+        } catch (Exception e) {
+            log.warn("WebSocket reconnect attempt failed: {}", e.getMessage());
+            started = false;
+        }
+
+        if (!started) {
+            recordFailure();
+            synchronized (this) {
+                pendingAttempt = null;
+            }
+            scheduleReconnect(attempt);
+        }
+    }
+
+    private synchronized long nextDelayMs() {
+        long now = System.currentTimeMillis();
+        if (now < circuitOpenUntil) {
+            return circuitOpenUntil - now;
+        }
+        // Jitter: uniform between half the initial delay and the capped exponential delay
+        int exponent = Math.min(consecutiveFailures, 20);
+        long ceiling = Math.min(maxDelayMs, initialDelayMs * (1L << exponent));
+        return ThreadLocalRandom.current().nextLong(initialDelayMs / 2, Math.max(initialDelayMs, ceiling) + 1);
+    }
+
+    @FunctionalInterface
+    public interface ReconnectAttempt {
+        boolean run() throws Exception;
+    }
+}
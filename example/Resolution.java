@@ -0,0 +1,53 @@
+package com.example.asekoflowmonitor.history;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bucket widths kept by {@link MeasurementRollup}, finest first.
+ */
+public enum Resolution {
+    MINUTE("1m", TimeUnit.MINUTES.toMillis(1)),
+    FIFTEEN_MINUTES("15m", TimeUnit.MINUTES.toMillis(15)),
+    HOUR("1h", TimeUnit.HOURS.toMillis(1)),
+    DAY("1d", TimeUnit.DAYS.toMillis(1));
+
+    private final String label;
+    private final long widthMillis;
+
+    Resolution(String label, long widthMillis) {
+        this.label = label;
+        this.widthMillis = widthMillis;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public long getWidthMillis() {
+        return widthMillis;
+    }
+
+    public long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, widthMillis) * widthMillis;
+    }
+
+    /**
+     * Picks the finest resolution that keeps [from, to] within {@code maxPoints} buckets, or
+     * null when even one-minute buckets would be finer than needed. Null does not mean raw
+     * samples fit the budget; that depends on the sample rate, so callers check the raw count
+     * and fall back to {@link #MINUTE}, which always fits in that case. Ranges too long even for
+     * day buckets get {@link #DAY}, which callers must downsample to stay within the budget.
+     */
+    public static Resolution forRange(long from, long to, int maxPoints) {
+        long desiredWidth = (to - from) / Math.max(maxPoints, 1);
+        if (desiredWidth < MINUTE.widthMillis) {
+            return null;
+        }
+        for (Resolution resolution : values()) {
+            if (resolution.widthMillis >= desiredWidth) {
+                return resolution;
+            }
+        }
+        return DAY;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.asekoflowmonitor.history;
+
+/**
+ * Aggregate of all samples that fell into one bucket.
+ */
+public final class RollupBucket {
+
+    private final long start;
+    private final double min;
+    private final double max;
+    private final double sum;
+    private final long count;
+    private final double last;
+
+    public RollupBucket(long start, double min, double max, double sum, long count, double last) {
+        this.start = start;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.count = count;
+        this.last = last;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getAvg() {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.asekoflowmonitor.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Pre-aggregated buckets of one metric at one {@link Resolution}, stored as fixed-size
+ * records in a memory-mapped file so a range is found by binary search. The bucket that
+ * is still filling up lives in memory and is written out once a sample for a later bucket
+ * arrives (or on close, in which case it is reopened on the next start). {@link #checkpoint()}
+ * also writes it out, as the last record, without closing it, so a crash loses only what was
+ * added since the last checkpoint; on the next start that record is reopened the same way.
+ *
+ * File layout: a 16 byte header (magic, version, record count) followed by 48 byte records
+ * (bucket start, min, max, sum, count, last).
+ */
+final class RollupSeries implements Closeable {
+
+    private static final int MAGIC = 0x41534B52;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 48;
+    private static final int INITIAL_RECORDS = 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Resolution resolution;
+    private MappedByteBuffer mapped;
+    private long records;
+
+    private boolean open = false;
+    private long openStart;
+    private double openMin;
+    private double openMax;
+    private double openSum;
+    private long openCount;
+    private double openLast;
+
+    private RollupSeries(Path path, FileChannel channel, Resolution resolution) {
+        this.path = path;
+        this.channel = channel;
+        this.resolution = resolution;
+    }
+
+    static RollupSeries open(Path path, Resolution resolution) throws IOException {
+        Files.createDirectories(path.getParent());
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        RollupSeries series = new RollupSeries(path, channel, resolution);
+        try {
+            series.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return series;
+    }
+
+    synchronized void add(long timestamp, double value) throws IOException {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        long bucketStart = resolution.bucketStart(timestamp);
+        if (open && bucketStart > openStart) {
+            sealOpenBucket();
+        }
+        if (!open) {
+            open = true;
+            openStart = bucketStart;
+            openMin = value;
+            openMax = value;
+            openSum = 0;
+            openCount = 0;
+        }
+        // Late samples for an already sealed bucket are folded into the open one
+        openMin = Math.min(openMin, value);
+        openMax = Math.max(openMax, value);
+        openSum += value;
+        openCount++;
+        openLast = value;
+    }
+
+    /**
+     * Adds the buckets starting within [from, to] to {@code out}, oldest first.
+     */
+    synchronized void query(long from, long to, List<RollupBucket> out) {
+        long first = resolution.bucketStart(from);
+        for (long i = firstRecordAtOrAfter(first); i < records; i++) {
+            int o = offset(i);
+            long start = mapped.getLong(o);
+            if (start > to) {
+                return;
+            }
+            out.add(new RollupBucket(start, mapped.getDouble(o + 8), mapped.getDouble(o + 16),
+                    mapped.getDouble(o + 24), mapped.getLong(o + 32), mapped.getDouble(o + 40)));
+        }
+        if (open && openStart >= first && openStart <= to) {
+            out.add(new RollupBucket(openStart, openMin, openMax, openSum, openCount, openLast));
+        }
+    }
+
+    synchronized void checkpoint() throws IOException {
+        if (open) {
+            writeOpenBucket();
+            mapped.putLong(8, records + 1);
+        }
+        mapped.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (open) {
+                sealOpenBucket();
+            }
+            mapped.force();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) INITIAL_RECORDS * RECORD_BYTES);
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            mapped.putLong(8, 0);
+            records = 0;
+            return;
+        }
+
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            throw new IOException("Not a rollup file: " + path);
+        }
+        records = mapped.getLong(8);
+
+        // The newest bucket may still be filling up; take it back into memory
+        if (records > 0) {
+            int o = offset(records - 1);
+            open = true;
+            openStart = mapped.getLong(o);
+            openMin = mapped.getDouble(o + 8);
+            openMax = mapped.getDouble(o + 16);
+            openSum = mapped.getDouble(o + 24);
+            openCount = mapped.getLong(o + 32);
+            openLast = mapped.getDouble(o + 40);
+            records--;
+            mapped.putLong(8, records);
+        }
+    }
+
+    private void sealOpenBucket() throws IOException {
+        writeOpenBucket();
+        records++;
+        mapped.putLong(8, records);
+        open = false;
+    }
+
+    // Writes the open bucket into the record slot after the sealed ones
+    private void writeOpenBucket() throws IOException {
+        long needed = HEADER_BYTES + (records + 1) * RECORD_BYTES;
+        if (needed > mapped.capacity()) {
+            long newSize = Math.max(needed, (long) mapped.capacity() * 2);
+            if (newSize > Integer.MAX_VALUE) {
+                throw new IOException("Rollup file is full: " + path);
+            }
+            mapped.force();
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        }
+
+        int o = offset(records);
+        mapped.putLong(o, openStart);
+        mapped.putDouble(o + 8, openMin);
+        mapped.putDouble(o + 16, openMax);
+        mapped.putDouble(o + 24, openSum);
+        mapped.putLong(o + 32, openCount);
+        mapped.putDouble(o + 40, openLast);
+    }
+
+    private long firstRecordAtOrAfter(long bucketStart) {
+        long low = 0;
+        long high = records;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (mapped.getLong(offset(mid)) < bucketStart) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int offset(long record) {
+        return (int) (HEADER_BYTES + record * RECORD_BYTES);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.asekoflowmonitor.history;
+
+import java.util.Arrays;
+
+/**
+ * Result of a range query: parallel primitive arrays of timestamps (epoch millis) and values.
+ */
+public final class SeriesData {
+
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    public SeriesData() {
+        this(64);
+    }
+
+    public SeriesData(int initialCapacity) {
+        this.timestamps = new long[Math.max(initialCapacity, 1)];
+        this.values = new double[Math.max(initialCapacity, 1)];
+    }
+
+    public void add(long timestamp, double value) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long timestampAt(int index) {
+        return timestamps[index];
+    }
+
+    public double valueAt(int index) {
+        return values[index];
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One tile of a unit's status view (StatusValueFragment). The center is either a StringValue
+ * (value, iconName) or an UpcomingFiltrationPeriodValue (configuration, isNext).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StatusValue(
+        String id,
+        String type,
+        String backgroundColor,
+        String textColor,
+        String topLeft,
+        String topRight,
+        Center center,
+        String bottomRight,
+        BottomLeft bottomLeft) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Center(
+            @JsonProperty("__typename") String typename,
+            String value,
+            String iconName,
+            FiltrationPeriod configuration,
+            Boolean isNext) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record FiltrationPeriod(
+            String name,
+            String speed,
+            String start,
+            String end,
+            String overrideIntervalText,
+            Boolean poolFlow) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record BottomLeft(String prefix, String suffix, String style) {
+    }
+}
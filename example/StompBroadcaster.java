@@ -0,0 +1,299 @@
+package com.example.asekoflowmonitor.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes to STOMP topics with per-topic rate limiting. Each topic flushes at most its max rate
+ * times per second; a flush sends the latest pending payload of every key (usually a unit) that
+ * changed since the previous one. Bursts therefore collapse per key, and a topic with N keys
+ * sends at most N messages per flush, however fast the keys update. Payloads equal to the last
+ * one sent for the same topic and key are dropped.
+ *
+ * <p>Topics listed in aseko.broadcast.delta-topics carry envelopes instead of raw trees:
+ * {"type":"snapshot","key","seq","data"} or {"type":"patch","key","seq","patch"} where the
+ * patch is RFC 6902 against the tree sent with seq - 1. A full snapshot goes out every
+ * snapshot-every messages or snapshot-interval-seconds; a client that misses a seq fetches
+ * {@link #snapshot(String, String)} through /api/resync and continues from there. Typed
+ * payloads on delta topics are turned into a tree once per flush, not once per publish.
+ */
+@Service
+public class StompBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(StompBroadcaster.class);
+    private static final String DEFAULT_KEY = "";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final AsekoMetrics metrics;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+    private final LogSampler publishErrors = new LogSampler(10, TimeUnit.SECONDS);
+    private final Map<String, Long> topicIntervalsNanos = new HashMap<>();
+    private final long defaultIntervalNanos;
+    private final Set<String> deltaTopics = new HashSet<>();
+    private final int snapshotEvery;
+    private final long snapshotIntervalNanos;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "stomp-broadcaster");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param maxRatePerSecond default max flushes per second for each topic
+     * @param topicMaxRates    per-topic overrides, e.g. "/topic/poolData:2,/topic/status:10"
+     * @param deltaTopics      topics published as snapshot/patch envelopes
+     */
+    @Autowired
+    public StompBroadcaster(SimpMessagingTemplate messagingTemplate,
+                            @Value("${aseko.broadcast.max-rate-per-second:4}") double maxRatePerSecond,
+                            @Value("${aseko.broadcast.topic-max-rates:}") String topicMaxRates,
+                            @Value("${aseko.broadcast.delta-topics:/topic/poolData,/topic/unitDetail}") String deltaTopics,
+                            @Value("${aseko.broadcast.snapshot-every:50}") int snapshotEvery,
+                            @Value("${aseko.broadcast.snapshot-interval-seconds:60}") long snapshotIntervalSeconds,
+                            AsekoMetrics metrics) {
+        this.messagingTemplate = messagingTemplate;
+        this.metrics = metrics;
+        this.defaultIntervalNanos = intervalNanos(maxRatePerSecond);
+        this.snapshotEvery = Math.max(1, snapshotEvery);
+        this.snapshotIntervalNanos = TimeUnit.SECONDS.toNanos(snapshotIntervalSeconds);
+        for (String topic : deltaTopics.split(",")) {
+            if (!topic.trim().isEmpty()) {
+                this.deltaTopics.add(topic.trim());
+            }
+        }
+        for (String entry : topicMaxRates.split(",")) {
+            int separator = entry.lastIndexOf(':');
+            if (separator > 0) {
+                String topic = entry.substring(0, separator).trim();
+                topicIntervalsNanos.put(topic, intervalNanos(Double.parseDouble(entry.substring(separator + 1).trim())));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public void publish(String topic, Object payload) {
+        publish(topic, DEFAULT_KEY, payload);
+    }
+
+    /**
+     * Queues {@code payload} as the latest value for the topic and key. The broadcaster thread
+     * flushes the topic right away if its rate limit allows, otherwise when the current interval
+     * ends; the caller never serializes or sends.
+     */
+    public void publish(String topic, String key, Object payload) {
+        if (payload == null) {
+            return;
+        }
+        String slotKey = key != null ? key : DEFAULT_KEY;
+        Topic state = topics.computeIfAbsent(topic,
+                t -> new Topic(t, topicIntervalsNanos.getOrDefault(t, defaultIntervalNanos),
+                        deltaTopics.contains(t), metrics.broadcastTimer(t)));
+        Slot slot = state.slots.computeIfAbsent(slotKey, Slot::new);
+
+        long delayNanos;
+        synchronized (state) {
+            slot.pending = payload;
+            state.dirty.add(slot);
+            if (state.flushScheduled) {
+                // A flush is already due; it will pick up this newer payload
+                return;
+            }
+            delayNanos = Math.max(0, state.lastFlushNanos + state.intervalNanos - System.nanoTime());
+            state.flushScheduled = true;
+        }
+
+        scheduler.schedule(() -> flush(state), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the latest tree sent on a delta topic as a snapshot envelope, or null if nothing
+     * has been sent for that topic and key yet. Patches with a higher seq apply on top of it.
+     */
+    public ObjectNode snapshot(String topic, String key) {
+        Topic state = topics.get(topic);
+        Slot slot = state != null ? state.slots.get(key != null ? key : DEFAULT_KEY) : null;
+        if (slot == null || !state.delta) {
+            return null;
+        }
+        synchronized (slot) {
+            return slot.lastTree != null ? snapshotEnvelope(slot, slot.lastTree) : null;
+        }
+    }
+
+    public boolean isDeltaTopic(String topic) {
+        return deltaTopics.contains(topic);
+    }
+
+    // Package-private so the broadcast benchmarks can time a flush on the calling thread
+    void flushNow(String topic) {
+        Topic state = topics.get(topic);
+        if (state != null) {
+            flush(state);
+        }
+    }
+
+    private void flush(Topic state) {
+        // Flushes run on the broadcaster thread only. The send lock still keeps "build envelope,
+        // send it" atomic against a future second flusher, so seqs reach the broker in order and
+        // no patch overtakes the envelope it is based on. publish() and snapshot() never wait on a send.
+        synchronized (state.sendLock) {
+            List<Slot> due;
+            List<Object> payloads;
+            synchronized (state) {
+                state.flushScheduled = false;
+                if (state.dirty.isEmpty()) {
+                    return;
+                }
+                state.lastFlushNanos = System.nanoTime();
+                due = new ArrayList<>(state.dirty);
+                payloads = new ArrayList<>(due.size());
+                for (Slot slot : due) {
+                    payloads.add(slot.pending);
+                    slot.pending = null;
+                }
+                state.dirty.clear();
+            }
+            for (int i = 0; i < due.size(); i++) {
+                send(state, due.get(i), payloads.get(i));
+            }
+        }
+    }
+
+    private void send(Topic state, Slot slot, Object payload) {
+        Object message;
+        synchronized (slot) {
+            if (payload == null || Objects.equals(payload, slot.lastSent)) {
+                return;
+            }
+            message = payload;
+            if (state.delta) {
+                JsonNode tree = payload instanceof JsonNode ? (JsonNode) payload : objectMapper.valueToTree(payload);
+                message = nextEnvelope(slot, tree, System.nanoTime());
+                slot.lastTree = tree;
+            }
+            slot.lastSent = payload;
+        }
+
+        long start = System.nanoTime();
+        try {
+            messagingTemplate.convertAndSend(state.topic, message);
+        } catch (Exception e) {
+            long suppressed = publishErrors.tryAcquire(state.topic);
+            if (suppressed >= 0) {
+                log.warn("Error publishing topic={}: {} (suppressed={})", state.topic, e.getMessage(), suppressed);
+            }
+        } finally {
+            state.sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ObjectNode nextEnvelope(Slot slot, JsonNode payload, long now) {
+        slot.seq++;
+        boolean snapshotDue = slot.lastTree == null
+                || slot.sinceSnapshot + 1 >= snapshotEvery
+                || now - slot.lastSnapshotNanos >= snapshotIntervalNanos;
+        if (!snapshotDue) {
+            ArrayNode patch = JsonPatchDiff.diff(slot.lastTree, payload);
+            // A patch that rewrites most of the tree is no cheaper than the tree itself
+            if (patch.size() <= payload.size()) {
+                slot.sinceSnapshot++;
+                ObjectNode envelope = envelope("patch", slot);
+                envelope.set("patch", patch);
+                return envelope;
+            }
+        }
+        slot.sinceSnapshot = 0;
+        slot.lastSnapshotNanos = now;
+        return snapshotEnvelope(slot, payload);
+    }
+
+    private static ObjectNode snapshotEnvelope(Slot slot, JsonNode data) {
+        ObjectNode envelope = envelope("snapshot", slot);
+        envelope.set("data", data);
+        return envelope;
+    }
+
+    private static ObjectNode envelope(String type, Slot slot) {
+        ObjectNode envelope = JsonNodeFactory.instance.objectNode();
+        envelope.put("type", type);
+        envelope.put("key", slot.key);
+        envelope.put("seq", slot.seq);
+        return envelope;
+    }
+
+    private static long intervalNanos(double maxRatePerSecond) {
+        return maxRatePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxRatePerSecond) : 0;
+    }
+
+    /**
+     * Rate limit state of one topic. {@code dirty}, {@code flushScheduled}, {@code lastFlushNanos}
+     * and the slots' {@code pending} are guarded by the topic's monitor.
+     */
+    private static final class Topic {
+        final String topic;
+        final long intervalNanos;
+        final boolean delta;
+        final Timer sendTimer;
+        final Map<String, Slot> slots = new ConcurrentHashMap<>();
+        final Set<Slot> dirty = new LinkedHashSet<>();
+        // Held across envelope building and convertAndSend; taken before the topic and slot monitors
+        final Object sendLock = new Object();
+        long lastFlushNanos;
+        boolean flushScheduled;
+
+        Topic(String topic, long intervalNanos, boolean delta, Timer sendTimer) {
+            this.topic = topic;
+            this.intervalNanos = intervalNanos;
+            this.delta = delta;
+            this.sendTimer = sendTimer;
+            this.lastFlushNanos = System.nanoTime() - intervalNanos;
+        }
+    }
+
+    /**
+     * One key of a topic. The envelope state is guarded by the slot's monitor so
+     * {@link #snapshot} can read it while other keys of the topic are being sent.
+     */
+    private static final class Slot {
+        final String key;
+        Object pending;
+        Object lastSent;
+        JsonNode lastTree;
+        long seq;
+        int sinceSnapshot;
+        long lastSnapshotNanos;
+
+        Slot(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.asekoflowmonitor.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A single append-only series (one metric of one unit) stored in a memory-mapped file.
+ * Samples are buffered in a compressed in-memory block and sealed to the file once the
+ * block is full. Sealed blocks are indexed by their time range so range queries decode
+ * only the blocks that overlap the requested window.
+ *
+ * File layout: a 16 byte header (magic, version, end offset) followed by blocks, each a
+ * 24 byte header (first timestamp, last timestamp, sample count, payload length) plus payload.
+ *
+ * <p>{@link #checkpoint()} writes the filling block after the sealed ones and moves the file's
+ * end offset past it without sealing it in memory; the next checkpoint or seal overwrites it in
+ * place. After a crash it loads as an ordinary block, so normally at most the samples appended
+ * since the last checkpoint are lost (see {@link #checkpoint()} for the torn-write case).
+ */
+final class TimeSeries implements Closeable {
+
+    private static final int MAGIC = 0x41534B54;
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 16;
+    private static final int BLOCK_HEADER_BYTES = 24;
+    private static final long INITIAL_FILE_BYTES = 64 * 1024;
+    private static final long MAX_GROWTH_BYTES = 64L * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int samplesPerBlock;
+    private MappedByteBuffer mapped;
+    private long endOffset;
+
+    private long[] blockFirst = new long[16];
+    private long[] blockLast = new long[16];
+    private long[] blockOffset = new long[16];
+    private int[] blockCount = new int[16];
+    private int blocks = 0;
+
+    private GorillaCodec.Encoder active = new GorillaCodec.Encoder();
+    private long activeFirst;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    private TimeSeries(Path path, FileChannel channel, int samplesPerBlock) {
+        this.path = path;
+        this.channel = channel;
+        this.samplesPerBlock = samplesPerBlock;
+    }
+
+    static TimeSeries open(Path path, int samplesPerBlock) throws IOException {
+        Files.createDirectories(path.getParent());
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        TimeSeries series = new TimeSeries(path, channel, samplesPerBlock);
+        try {
+            series.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return series;
+    }
+
+    synchronized void append(long timestamp, double value) throws IOException {
+        // Append-only: late samples are clamped so block time ranges stay ordered
+        if (timestamp < lastTimestamp) {
+            timestamp = lastTimestamp;
+        }
+        if (active.count() == 0) {
+            activeFirst = timestamp;
+        }
+        active.append(timestamp, value);
+        lastTimestamp = timestamp;
+
+        if (active.count() >= samplesPerBlock) {
+            sealActiveBlock();
+        }
+    }
+
+    synchronized void query(long from, long to, SeriesData out) {
+        if (from > to) {
+            return;
+        }
+        for (int i = firstBlockEndingAtOrAfter(from); i < blocks && blockFirst[i] <= to; i++) {
+            int dataOffset = (int) blockOffset[i] + BLOCK_HEADER_BYTES;
+            new GorillaCodec.Decoder(mapped, dataOffset).decodeInto(blockCount[i], from, to, out);
+        }
+        if (active.count() > 0 && activeFirst <= to && lastTimestamp >= from) {
+            new GorillaCodec.Decoder(ByteBuffer.wrap(active.toByteArray()), 0)
+                    .decodeInto(active.count(), from, to, out);
+        }
+    }
+
+    /**
+     * Upper bound on the samples in [from, to], from the block index alone: blocks that only
+     * partly overlap the range count in full. Nothing is decoded.
+     */
+    synchronized long countAtMost(long from, long to) {
+        if (from > to) {
+            return 0;
+        }
+        long count = 0;
+        for (int i = firstBlockEndingAtOrAfter(from); i < blocks && blockFirst[i] <= to; i++) {
+            count += blockCount[i];
+        }
+        if (active.count() > 0 && activeFirst <= to && lastTimestamp >= from) {
+            count += active.count();
+        }
+        return count;
+    }
+
+    synchronized long firstTimestamp() {
+        if (blocks > 0) {
+            return blockFirst[0];
+        }
+        return active.count() > 0 ? activeFirst : Long.MIN_VALUE;
+    }
+
+    synchronized long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Makes the samples of the filling block durable without sealing it, so blocks stay full
+     * size. The block is rewritten in place at the sealed end, payload first, then its header,
+     * then the file end. If the process dies between the header and the file end, the next
+     * load finds a block longer than the file and cuts it off, losing the samples since the
+     * last sealed block rather than reading a torn one.
+     */
+    synchronized void checkpoint() throws IOException {
+        if (active.count() > 0) {
+            long end = writeActiveBlock();
+            mapped.putLong(8, end);
+        }
+        mapped.force();
+    }
+
+    /**
+     * Seals the partially filled block and forces mapped pages to disk.
+     */
+    synchronized void flush() throws IOException {
+        if (active.count() > 0) {
+            sealActiveBlock();
+        }
+        mapped.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size < FILE_HEADER_BYTES) {
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_FILE_BYTES);
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            endOffset = FILE_HEADER_BYTES;
+            mapped.putLong(8, endOffset);
+            return;
+        }
+
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+            throw new IOException("Not a measurement series file: " + path);
+        }
+        endOffset = Math.min(Math.max(mapped.getLong(8), FILE_HEADER_BYTES), size);
+
+        long offset = FILE_HEADER_BYTES;
+        while (offset + BLOCK_HEADER_BYTES <= endOffset) {
+            int o = (int) offset;
+            int count = mapped.getInt(o + 16);
+            int length = mapped.getInt(o + 20);
+            if (count < 0 || length < 0 || offset + BLOCK_HEADER_BYTES + length > endOffset) {
+                // A checkpointed block being rewritten when the process died
+                break;
+            }
+            addToIndex(mapped.getLong(o), mapped.getLong(o + 8), offset, count);
+            offset += BLOCK_HEADER_BYTES + length;
+        }
+        if (offset != endOffset) {
+            // Cut the file back to the last whole block, so the next write starts there and
+            // no later load parses the torn header again
+            endOffset = offset;
+            mapped.putLong(8, endOffset);
+        }
+        if (blocks > 0) {
+            lastTimestamp = blockLast[blocks - 1];
+        }
+    }
+
+    private void sealActiveBlock() throws IOException {
+        long end = writeActiveBlock();
+        addToIndex(activeFirst, lastTimestamp, endOffset, active.count());
+        endOffset = end;
+        // Publish the new end only after the block itself is written
+        mapped.putLong(8, endOffset);
+
+        active = new GorillaCodec.Encoder();
+    }
+
+    // Writes the active block at the sealed end of the file and returns the offset just past it
+    private long writeActiveBlock() throws IOException {
+        byte[] payload = active.toByteArray();
+        long needed = endOffset + BLOCK_HEADER_BYTES + payload.length;
+        ensureCapacity(needed);
+
+        int o = (int) endOffset;
+        mapped.put(o + BLOCK_HEADER_BYTES, payload);
+        mapped.putLong(o, activeFirst);
+        mapped.putLong(o + 8, lastTimestamp);
+        mapped.putInt(o + 16, active.count());
+        mapped.putInt(o + 20, payload.length);
+        return needed;
+    }
+
+    private void ensureCapacity(long needed) throws IOException {
+        if (needed <= mapped.capacity()) {
+            return;
+        }
+        long grown = mapped.capacity() + Math.min(mapped.capacity(), MAX_GROWTH_BYTES);
+        long newSize = Math.max(needed, grown);
+        if (newSize > Integer.MAX_VALUE) {
+            throw new IOException("Series file is full: " + path);
+        }
+        mapped.force();
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+    }
+
+    private void addToIndex(long first, long last, long offset, int count) {
+        if (blocks == blockFirst.length) {
+            int capacity = blocks * 2;
+            blockFirst = Arrays.copyOf(blockFirst, capacity);
+            blockLast = Arrays.copyOf(blockLast, capacity);
+            blockOffset = Arrays.copyOf(blockOffset, capacity);
+            blockCount = Arrays.copyOf(blockCount, capacity);
+        }
+        blockFirst[blocks] = first;
+        blockLast[blocks] = last;
+        blockOffset[blocks] = offset;
+        blockCount[blocks] = count;
+        blocks++;
+    }
+
+    private int firstBlockEndingAtOrAfter(long timestamp) {
+        int low = 0;
+        int high = blocks;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockLast[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
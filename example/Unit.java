@@ -0,0 +1,34 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A unit as it appears in the unit list (UnitFragment / UnitNeverConnectedFragment) and in
+ * UnitUpdates subscription frames. Each source fills its own subset of fields; the rest are null.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record Unit(
+        @JsonProperty("__typename") String typename,
+        String id,
+        String serialNumber,
+        String name,
+        String note,
+        BrandName brandName,
+        String position,
+        List<StatusMessage> statusMessages,
+        List<Consumable> consumables,
+        Boolean online,
+        String offlineFor,
+        Boolean hasWarning,
+        List<NotificationConfiguration> notificationConfiguration,
+        UnitModel unitModel,
+        Measurements measurements,
+        Map<String, Double> variables,
+        Map<String, Double> dosing) {
+}
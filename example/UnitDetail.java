@@ -0,0 +1,85 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Result of the UnitDetailStatusQuery (or the older UnitDetail query, which fills brandName,
+ * heating, consumables, notificationConfiguration and unitModel instead of the status fields).
+ * __typename is Unit or UnitNeverConnected for a real unit, UnitNotFoundError or
+ * UnitAccessDeniedError otherwise.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UnitDetail(
+        @JsonProperty("__typename") String typename,
+        String serialNumber,
+        String name,
+        String note,
+        String offlineFor,
+        List<StatusMessage> statusMessages,
+        StatusValues statusValues,
+        BackwashStatus backwash,
+        WaterFilling waterFilling,
+        BrandName brandName,
+        Heating heating,
+        List<Consumable> consumables,
+        List<NotificationConfiguration> notificationConfiguration,
+        UnitModel unitModel) {
+
+    @JsonIgnore
+    public boolean isError() {
+        return "UnitNotFoundError".equals(typename) || "UnitAccessDeniedError".equals(typename);
+    }
+
+    /**
+     * The detail fields already known from a unit list entry, used until the detail is fetched.
+     */
+    public static UnitDetail fromUnit(Unit unit) {
+        return new UnitDetail(unit.typename(), unit.serialNumber(), unit.name(), unit.note(), unit.offlineFor(),
+                unit.statusMessages(), null, null, null, unit.brandName(), null, unit.consumables(),
+                unit.notificationConfiguration(), unit.unitModel());
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record StatusValues(
+            @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY) List<StatusValue> primary,
+            @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY) List<StatusValue> secondary) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record WaterFilling(
+            String id,
+            Double waterLevel,
+            String totalTime,
+            Double totalLiters,
+            String totalTimeFromLastReset,
+            Double totalLitersFromLastReset,
+            String lastReset,
+            Double litersPerMinute,
+            Configuration configuration) {
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public record Configuration(
+                Double levelHigh,
+                Double levelLow,
+                Double levelMax,
+                Double levelMin,
+                String maxFillingTime,
+                Boolean enabled) {
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Heating(String lastReset) {
+    }
+}
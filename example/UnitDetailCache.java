@@ -0,0 +1,254 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.Unit;
+import com.example.asekoflowmonitor.model.UnitDetail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache in front of {@link UnitService#fetchUnitDetailAsync(String)}, keyed by serial number.
+ * Concurrent misses for the same unit share one upstream query, and entries past their TTL are
+ * still served for a grace period while a background refresh runs.
+ *
+ * <p>{@link #invalidate} shortens the freshness of the cached entry rather than dropping it, so
+ * readers keep getting the last known detail while one shared load revalidates it. A streaming
+ * unit invalidates on every frame, so an entry stays fresh for at least
+ * {@code aseko.unit-detail-cache.min-revalidate-seconds} after its load and is revalidated at
+ * most that often. A load that was already running when the invalidation arrived is cached
+ * with the same shortened freshness.
+ */
+@Service
+public class UnitDetailCache {
+
+    private static final Logger log = LoggerFactory.getLogger(UnitDetailCache.class);
+
+    private final UnitService unitService;
+    private final AsekoMetrics metrics;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Load> inFlight = new ConcurrentHashMap<>();
+    // Subscription pushes carry the unit id, the detail query is keyed by serial number.
+    // Rebuilt from each unit list, so invalidate() never scans the list on the pipeline thread.
+    private volatile Map<String, String> serialNumbersById = Collections.emptyMap();
+    // Bumped by invalidateAll(), which covers every unit at once
+    private final AtomicLong epoch = new AtomicLong();
+
+    @Value("${aseko.unit-detail-cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${aseko.unit-detail-cache.min-revalidate-seconds:5}")
+    private long minRevalidateSeconds;
+
+    @Value("${aseko.unit-detail-cache.stale-seconds:300}")
+    private long staleSeconds;
+
+    @Value("${aseko.unit-detail-cache.max-entries:100}")
+    private int maxEntries;
+
+    @Autowired
+    public UnitDetailCache(UnitService unitService, AsekoMetrics metrics) {
+        this.unitService = unitService;
+        this.metrics = metrics;
+        metrics.gauge("aseko.unit_detail_cache.size", "Cached unit details", entries, Map::size);
+    }
+
+    public UnitDetail get(String serialNumber) throws IOException {
+        return await(getAsync(serialNumber));
+    }
+
+    /**
+     * Non-blocking variant of {@link #get(String)}. Misses are queued on the GraphQL batch
+     * loader, so a caller asking for many units at once gets them in a single request.
+     */
+    public CompletableFuture<UnitDetail> getAsync(String serialNumber) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(serialNumber);
+        if (entry != null) {
+            entry.lastAccess = now;
+            if (now < entry.freshUntil) {
+                metrics.cacheHit();
+                return CompletableFuture.completedFuture(entry.value);
+            }
+            if (now < entry.staleUntil) {
+                // Serve the stale copy immediately and revalidate in the background
+                metrics.cacheStaleHit();
+                refreshAsync(serialNumber);
+                return CompletableFuture.completedFuture(entry.value);
+            }
+        }
+        metrics.cacheMiss();
+        return load(serialNumber);
+    }
+
+    /**
+     * Marks the cached detail for a unit due for revalidation, identified either by serial number
+     * or by unit id. The cached copy is still served, and a read once the entry is
+     * min-revalidate-seconds old refreshes it. Units the cache does not hold cost two map lookups.
+     */
+    public void invalidate(String unitKey) {
+        if (unitKey == null || unitKey.isEmpty()) {
+            return;
+        }
+        String serialNumber = unitKey;
+        if (!entries.containsKey(serialNumber) && !inFlight.containsKey(serialNumber)) {
+            serialNumber = serialNumbersById.get(unitKey);
+            if (serialNumber == null || (!entries.containsKey(serialNumber) && !inFlight.containsKey(serialNumber))) {
+                return;
+            }
+        }
+        // Mark the load before the entry: a load completes by putting its entry and only then
+        // leaving inFlight, so one of the two marks below always reaches the result
+        Load load = inFlight.get(serialNumber);
+        if (load != null) {
+            load.invalidated = true;
+        }
+        Entry entry = entries.get(serialNumber);
+        if (entry != null) {
+            shortenFreshness(entry);
+        }
+    }
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        entries.clear();
+        inFlight.clear();
+    }
+
+    @EventListener
+    public void onUnitListUpdated(UnitListUpdatedEvent event) {
+        Map<String, String> byId = new HashMap<>();
+        for (Unit unit : event.getUnitList().units()) {
+            if (unit.id() != null && unit.serialNumber() != null) {
+                byId.put(unit.id(), unit.serialNumber());
+            }
+        }
+        serialNumbersById = byId;
+    }
+
+    private CompletableFuture<UnitDetail> load(String serialNumber) {
+        Load created = new Load();
+        Load existing = inFlight.putIfAbsent(serialNumber, created);
+        if (existing != null) {
+            return existing.future;
+        }
+
+        long epochAtStart = epoch.get();
+        unitService.fetchUnitDetailAsync(serialNumber).whenComplete((value, error) -> {
+            if (error != null) {
+                inFlight.remove(serialNumber, created);
+                created.future.completeExceptionally(error);
+                return;
+            }
+            if (value != null && epoch.get() == epochAtStart) {
+                Entry entry = put(serialNumber, value);
+                // Covers invalidations before the put and those that raced with it
+                if (created.invalidated) {
+                    shortenFreshness(entry);
+                }
+                if (epoch.get() != epochAtStart) {
+                    entries.remove(serialNumber, entry);
+                }
+            }
+            inFlight.remove(serialNumber, created);
+            created.future.complete(value);
+        });
+        return created.future;
+    }
+
+    private void refreshAsync(String serialNumber) {
+        if (inFlight.containsKey(serialNumber)) {
+            return;
+        }
+        load(serialNumber).exceptionally(error -> {
+            log.warn("Unit detail refresh failed for {}: {}", serialNumber, error.getMessage());
+            return null;
+        });
+    }
+
+    private Entry put(String serialNumber, UnitDetail value) {
+        long now = System.currentTimeMillis();
+        long freshUntil = now + TimeUnit.SECONDS.toMillis(ttlSeconds);
+        Entry entry = new Entry(value, now, freshUntil, freshUntil + TimeUnit.SECONDS.toMillis(staleSeconds));
+        entries.put(serialNumber, entry);
+        if (entries.size() > maxEntries) {
+            evictLeastRecentlyUsed();
+        }
+        return entry;
+    }
+
+    private void evictLeastRecentlyUsed() {
+        while (entries.size() > maxEntries) {
+            String oldestKey = null;
+            long oldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (candidate.getValue().lastAccess < oldestAccess) {
+                    oldestAccess = candidate.getValue().lastAccess;
+                    oldestKey = candidate.getKey();
+                }
+            }
+            if (oldestKey == null) {
+                return;
+            }
+            entries.remove(oldestKey);
+        }
+    }
+
+    // Idempotent, so calling it on every frame is a volatile read and at most one write
+    private void shortenFreshness(Entry entry) {
+        long revalidateAt = entry.loadedAt + TimeUnit.SECONDS.toMillis(minRevalidateSeconds);
+        if (revalidateAt < entry.freshUntil) {
+            entry.freshUntil = revalidateAt;
+        }
+    }
+
+    private UnitDetail await(CompletableFuture<UnitDetail> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading unit details", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to load unit details: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static final class Entry {
+        final UnitDetail value;
+        final long loadedAt;
+        final long staleUntil;
+        volatile long freshUntil;
+        volatile long lastAccess;
+
+        Entry(UnitDetail value, long loadedAt, long freshUntil, long staleUntil) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.lastAccess = loadedAt;
+        }
+    }
+
+    private static final class Load {
+        final CompletableFuture<UnitDetail> future = new CompletableFuture<>();
+        volatile boolean invalidated;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.Unit;
+import com.example.asekoflowmonitor.model.UnitDetail;
+import com.example.asekoflowmonitor.model.UnitList;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches unit details for every unit in the unit list at once, with a per-unit timeout. Cache
+ * misses are queued on the GraphQL batch loader, so the fleet goes out as batches of up to
+ * {@code aseko.graphql.batch.max-size} units, with at most
+ * {@code aseko.graphql.batch.max-in-flight} requests outstanding at once. Each finished unit is
+ * published to /topic/unitDetails right away.
+ */
+@Service
+public class UnitDetailFanOutService {
+
+    private static final Logger log = LoggerFactory.getLogger(UnitDetailFanOutService.class);
+
+    private final UnitService unitService;
+    private final UnitDetailCache unitDetailCache;
+    private final StompBroadcaster broadcaster;
+    private final ObjectMapper objectMapper;
+
+    @Value("${aseko.fan-out.unit-timeout-ms:10000}")
+    private long unitTimeoutMs;
+
+    @Autowired
+    public UnitDetailFanOutService(UnitService unitService,
+                                   UnitDetailCache unitDetailCache,
+                                   StompBroadcaster broadcaster) {
+        this.unitService = unitService;
+        this.unitDetailCache = unitDetailCache;
+        this.broadcaster = broadcaster;
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Completes with { "units": { serialNumber: detail }, "errors": { serialNumber: message }, "total": n }.
+     * Units that fail or time out are reported under "errors" instead of failing the whole call.
+     * No thread waits while the details load.
+     */
+    public CompletableFuture<ObjectNode> fetchAllUnitDetails() {
+        UnitList unitList = unitService.getUnitList();
+        Map<String, CompletableFuture<UnitDetail>> futures = new LinkedHashMap<>();
+        if (unitList != null) {
+            // Units without a serial and repeated serials get no load, so count only the rest
+            Set<String> serialNumbers = new LinkedHashSet<>();
+            for (Unit unit : unitList.units()) {
+                String serialNumber = unit.serialNumber();
+                if (serialNumber != null && !serialNumber.isEmpty()) {
+                    serialNumbers.add(serialNumber);
+                }
+            }
+            int total = serialNumbers.size();
+            AtomicInteger completed = new AtomicInteger();
+            for (String serialNumber : serialNumbers) {
+                // copy() so the timeout never completes a load other callers share
+                CompletableFuture<UnitDetail> future = unitDetailCache.getAsync(serialNumber).copy()
+                        .orTimeout(unitTimeoutMs, TimeUnit.MILLISECONDS);
+                future.whenComplete((detail, error) ->
+                        publishPartial(serialNumber, detail, error, completed.incrementAndGet(), total));
+                futures.put(serialNumber, future);
+            }
+        }
+
+        // Every future carries its own timeout, so this is bounded by the slowest unit
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .handle((ignored, error) -> collect(futures));
+    }
+
+    private ObjectNode collect(Map<String, CompletableFuture<UnitDetail>> futures) {
+        ObjectNode result = objectMapper.createObjectNode();
+        ObjectNode units = result.putObject("units");
+        ObjectNode errors = result.putObject("errors");
+        futures.forEach((serialNumber, future) -> {
+            try {
+                UnitDetail detail = future.join();
+                if (detail != null) {
+                    units.putPOJO(serialNumber, detail);
+                } else {
+                    errors.put(serialNumber, "Unit not found");
+                }
+            } catch (CompletionException e) {
+                errors.put(serialNumber, describe(e.getCause()));
+            }
+        });
+        result.put("total", futures.size());
+
+        log.info("Fetched details for {} of {} units", units.size(), futures.size());
+        return result;
+    }
+
+    private void publishPartial(String serialNumber, UnitDetail detail, Throwable error, int completed, int total) {
+        try {
+            ObjectNode partial = objectMapper.createObjectNode();
+            partial.put("serialNumber", serialNumber);
+            if (detail != null) {
+                partial.putPOJO("detail", detail);
+            } else {
+                partial.put("error", error != null ? describe(error) : "Unit not found");
+            }
+            partial.put("completed", completed);
+            partial.put("total", total);
+            broadcaster.publish("/topic/unitDetails", serialNumber, partial);
+        } catch (Exception e) {
+            log.warn("Error publishing unit detail for {}: {}", serialNumber, e.getMessage());
+        }
+    }
+
+    private String describe(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            return "Timed out after " + unitTimeoutMs + " ms";
+        }
+        if (cause instanceof UncheckedIOException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.asekoflowmonitor.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * One page of the UnitList connection, or the merged list of all pages fetched so far.
+ * {@code complete} is set once the last page has been merged.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record UnitList(
+        @JsonProperty("__typename") String typename,
+        String cursor,
+        List<Unit> units,
+        boolean complete) {
+
+    public UnitList {
+        units = units != null ? List.copyOf(units) : List.of();
+    }
+}
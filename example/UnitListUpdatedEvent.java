@@ -0,0 +1,19 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.UnitList;
+
+/**
+ * Published by {@link UnitService} whenever a complete unit list has been fetched.
+ */
+public class UnitListUpdatedEvent {
+
+    private final UnitList unitList;
+
+    public UnitListUpdatedEvent(UnitList unitList) {
+        this.unitList = unitList;
+    }
+
+    public UnitList getUnitList() {
+        return unitList;
+    }
+}
@@ -1,256 +1,194 @@
 package com.example.asekoflowmonitor.service;
 
 import com.example.asekoflowmonitor.config.AsekoConfig;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.client.methods.HttpOptions;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
+import com.example.asekoflowmonitor.model.Unit;
+import com.example.asekoflowmonitor.model.UnitDetail;
+import com.example.asekoflowmonitor.model.UnitList;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
 @Service
 public class UnitService {
 
     private final AsekoConfig asekoConfig;
     private final AuthService authService;
-    private final ObjectMapper objectMapper;
-    private final SimpMessagingTemplate messagingTemplate;
-    private JsonNode unitListData;
-    private JsonNode selectedUnit;
+    private final StompBroadcaster broadcaster;
+    private final GraphQLClient graphQLClient;
+    private final GraphQLBatchLoader batchLoader;
+    private final BackgroundTasks backgroundTasks;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MonitorStateStore stateStore;
+    
+    @Value("${aseko.unit-list.page-size:15}")
+    private int pageSize;
+    
+    @Value("${aseko.unit-list.max-pages:100}")
+    private int maxPages;
 
     @Autowired
-    public UnitService(AsekoConfig asekoConfig, AuthService authService, SimpMessagingTemplate messagingTemplate) {
+    public UnitService(AsekoConfig asekoConfig, AuthService authService, StompBroadcaster broadcaster,
+                       GraphQLClient graphQLClient, GraphQLBatchLoader batchLoader, BackgroundTasks backgroundTasks,
+                       ApplicationEventPublisher eventPublisher, MonitorStateStore stateStore) {
         this.asekoConfig = asekoConfig;
         this.authService = authService;
-        this.objectMapper = new ObjectMapper();
-        this.messagingTemplate = messagingTemplate;
+        this.broadcaster = broadcaster;
+        this.graphQLClient = graphQLClient;
+        this.batchLoader = batchLoader;
+        this.backgroundTasks = backgroundTasks;
+        this.eventPublisher = eventPublisher;
+        this.stateStore = stateStore;
     }
 
-    @PostConstruct
+    @EventListener(ApplicationReadyEvent.class)
     public void init() {
-        new Thread(() -> {
-            try {
-                Thread.sleep(8000); // Wait for authentication to complete
-                fetchUnitList();
-                
-                // Select the first unit after fetching the list
-                if (unitListData != null && unitListData.path("units").isArray() 
-                        && unitListData.path("units").size() > 0) {
-                    selectUnit(unitListData.path("units").get(0));
-                }
-            } catch (Exception e) {
-                System.err.println("Error initializing UnitService: " + e.getMessage());
-            }
-        }).start();
+        // Starts as soon as the first login succeeds instead of after a fixed wait
+        authService.whenAuthenticated()
+                .thenCompose(ignored -> fetchUnitListAsync())
+                .thenAcceptAsync(unitList -> {
+                    // Select the first unit after fetching the list
+                    if (unitList != null && !unitList.units().isEmpty()) {
+                        try {
+                            selectUnit(unitList.units().get(0));
+                        } catch (IOException e) {
+                            System.err.println("Error initializing UnitService: " + e.getMessage());
+                        }
+                    }
+                }, backgroundTasks.executor())
+                .exceptionally(error -> {
+                    System.err.println("Error initializing UnitService: " + error.getMessage());
+                    return null;
+                });
     }
-
+    
     @Scheduled(fixedRate = 300000) // Refresh unit list every 5 minutes
     public void refreshUnitList() {
-        try {
-            fetchUnitList();
-        } catch (Exception e) {
-            System.err.println("Error refreshing unit list: " + e.getMessage());
-        }
+        // Only starts the walk; the scheduler thread never waits on the Aseko cloud
+        fetchUnitListAsync().exceptionally(error -> null); // already logged by the walk
     }
 
-    public JsonNode getUnitList() {
-        return unitListData;
+    public UnitList getUnitList() {
+        return stateStore.current().unitList();
     }
 
     public void fetchUnitList() throws IOException {
+        try {
+            fetchUnitListAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching unit list", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new IOException("Failed to fetch unit list: " + cause.getMessage(), cause);
+        }
+    }
+    
+    /**
+     * Fetches the complete unit list by walking the UnitList cursor. The request for the next
+     * page is issued as soon as the current page's cursor is known, and every page is published
+     * to /topic/unitList as it arrives so clients can render the first units early. Completes
+     * with null, keeping the previous list, if a page came back with GraphQL errors.
+     */
+    public CompletableFuture<UnitList> fetchUnitListAsync() {
         System.out.println("\n===== FETCHING UNIT LIST =====");
         
-        try {
-            // Make sure we have a valid auth token
-            String token = authService.getAuthToken();
-            if (token == null || token.isEmpty()) {
-                throw new IOException("Authentication required");
+        return walkPages(fetchUnitPageAsync(null), new UnitListWalk()).handle((snapshot, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                System.err.println("Error fetching unit list: " + cause.getMessage());
+                throw new CompletionException(cause);
             }
-            
-            // Create the HTTP client
-            try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-                HttpPost httpPost = new HttpPost("https://graphql.acs.prod.aseko.cloud/graphql");
-                
-                // Set headers
-                httpPost.setHeader("Accept", "*/*");
-                httpPost.setHeader("Accept-Language", "en");
-                httpPost.setHeader("Authorization", "Bearer " + token);
-                httpPost.setHeader("Connection", "keep-alive");
-                httpPost.setHeader("Content-Type", "application/json");
-                httpPost.setHeader("Origin", "https://aseko.cloud");
-                httpPost.setHeader("Referer", "https://aseko.cloud/");
-                httpPost.setHeader("Sec-Fetch-Dest", "empty");
-                httpPost.setHeader("Sec-Fetch-Mode", "cors");
-                httpPost.setHeader("Sec-Fetch-Site", "same-site");
-                httpPost.setHeader("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/133.0.0.0 Safari/537.36");
-                httpPost.setHeader("X-App-Name", "pool-live");
-                httpPost.setHeader("X-App-Version", "4.2.0");
-                httpPost.setHeader("X-Mode", "production");
-                
-                // Create GraphQL query for UnitList
-                ObjectNode queryBody = objectMapper.createObjectNode();
-                queryBody.put("operationName", "UnitList");
-                
-                ObjectNode variables = objectMapper.createObjectNode();
-                variables.putNull("after");
-                variables.put("first", 15);
-                variables.put("search", "");
-                queryBody.set("variables", variables);
-                
-                // Use the exact GraphQL query from the curl command
-                String query = "fragment UnitFragment on Unit {\n" +
-                               "  __typename\n" +
-                               "  serialNumber\n" +
-                               "  name\n" +
-                               "  note\n" +
-                               "  brandName {\n" +
-                               "    id\n" +
-                               "    primary\n" +
-                               "    secondary\n" +
-                               "    __typename\n" +
-                               "  }\n" +
-                               "  position\n" +
-                               "  statusMessages {\n" +
-                               "    __typename\n" +
-                               "    type\n" +
-                               "    severity\n" +
-                               "    message\n" +
-                               "  }\n" +
-                               "  consumables {\n" +
-                               "    __typename\n" +
-                               "    ... on LiquidConsumable {\n" +
-                               "      canister {\n" +
-                               "        __typename\n" +
-                               "        id\n" +
-                               "        hasWarning\n" +
-                               "      }\n" +
-                               "      tube {\n" +
-                               "        __typename\n" +
-                               "        id\n" +
-                               "        hasWarning\n" +
-                               "      }\n" +
-                               "      __typename\n" +
-                               "    }\n" +
-                               "    ... on ElectrolyzerConsumable {\n" +
-                               "      electrode {\n" +
-                               "        __typename\n" +
-                               "        hasWarning\n" +
-                               "      }\n" +
-                               "      __typename\n" +
-                               "    }\n" +
-                               "  }\n" +
-                               "  online\n" +
-                               "  offlineFor\n" +
-                               "  hasWarning\n" +
-                               "  notificationConfiguration {\n" +
-                               "    __typename\n" +
-                               "    id\n" +
-                               "    hasWarning\n" +
-                               "  }\n" +
-                               "  unitModel {\n" +
-                               "    __typename\n" +
-                               "    id\n" +
-                               "    tabs {\n" +
-                               "      hideNotifications\n" +
-                               "      hideConsumables\n" +
-                               "      __typename\n" +
-                               "    }\n" +
-                               "  }\n" +
-                               "}\n\n" +
-                               "fragment UnitNeverConnectedFragment on UnitNeverConnected {\n" +
-                               "  __typename\n" +
-                               "  serialNumber\n" +
-                               "  name\n" +
-                               "  note\n" +
-                               "  position\n" +
-                               "  statusMessages {\n" +
-                               "    __typename\n" +
-                               "    severity\n" +
-                               "    type\n" +
-                               "    message\n" +
-                               "    detail\n" +
-                               "  }\n" +
-                               "}\n\n" +
-                               "query UnitList($after: String, $first: Int, $search: String) {\n" +
-                               "  units(after: $after, first: $first, searchQuery: $search) {\n" +
-                               "    cursor\n" +
-                               "    units {\n" +
-                               "      ...UnitFragment\n" +
-                               "      ...UnitNeverConnectedFragment\n" +
-                               "      __typename\n" +
-                               "    }\n" +
-                               "    __typename\n" +
-                               "  }\n" +
-                               "}";
-                queryBody.put("query", query);
-                
-                // Create the request entity
-                StringEntity entity = new StringEntity(objectMapper.writeValueAsString(queryBody), ContentType.APPLICATION_JSON);
-                httpPost.setEntity(entity);
-                
-                // Execute the request
-                try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                    
-                    System.out.println("Unit list query response status: " + statusCode);
-                    
-                    if (statusCode == 200) {
-                        JsonNode jsonResponse = objectMapper.readTree(responseBody);
-                        
-                        // Check for errors
-                        JsonNode errors = jsonResponse.path("errors");
-                        if (errors.isArray() && errors.size() > 0) {
-                            System.err.println("GraphQL errors: " + errors);
-                            return;
-                        }
-                        
-                        // Store the unit list data
-                        this.unitListData = jsonResponse.path("data").path("units");
-                        
-                        // Count the units
-                        int unitCount = 0;
-                        if (this.unitListData.path("units").isArray()) {
-                            unitCount = this.unitListData.path("units").size();
-                        }
-                        
-                        System.out.println("Successfully fetched " + unitCount + " units");
-                        
-                        // Send to connected clients
-                        messagingTemplate.convertAndSend("/topic/unitList", this.unitListData);
-                    } else {
-                        System.err.println("Unit list query failed, status: " + statusCode);
-                        System.err.println("Response: " + responseBody);
-                    }
-                }
+            if (snapshot != null) {
+                // Store the unit list data once the whole list is known
+                stateStore.setUnitList(snapshot);
+                System.out.println("Successfully fetched " + snapshot.units().size() + " units");
+                eventPublisher.publishEvent(new UnitListUpdatedEvent(snapshot));
             }
-        } catch (Exception e) {
-            System.err.println("Error fetching unit list: " + e.getMessage());
-            e.printStackTrace();
-            throw new IOException("Failed to fetch unit list: " + e.getMessage(), e);
-        }
+            System.out.println("===== UNIT LIST FETCH COMPLETE =====\n");
+            return snapshot;
+        });
+    }
+    
+    private CompletableFuture<UnitList> walkPages(CompletableFuture<UnitList> pending, UnitListWalk walk) {
+        return pending.thenCompose(page -> {
+            if (page == null) {
+                // GraphQL errors were already logged; keep whatever we had before
+                return CompletableFuture.completedFuture(null);
+            }
+            walk.pageCount++;
+            
+            String cursor = page.cursor();
+            boolean hasMore = cursor != null && !cursor.isEmpty()
+                    && !page.units().isEmpty()
+                    && walk.seenCursors.add(cursor)
+                    && walk.pageCount < maxPages;
+            
+            // Pipeline: start the next page before we process this one
+            CompletableFuture<UnitList> next = hasMore ? fetchUnitPageAsync(cursor) : null;
+            
+            walk.allUnits.addAll(page.units());
+            UnitList snapshot = new UnitList(page.typename() != null ? page.typename() : "UnitConnection",
+                    cursor, walk.allUnits, !hasMore);
+            
+            System.out.println("Fetched unit list page " + walk.pageCount + " (" + walk.allUnits.size() + " units so far)");
+            
+            // Send the units received so far to connected clients
+            broadcaster.publish("/topic/unitList", snapshot);
+            
+            return next != null ? walkPages(next, walk) : CompletableFuture.completedFuture(snapshot);
+        });
+    }
+    
+    /**
+     * Runs a single UnitList query and completes with the "units" connection (cursor plus
+     * units), or null if the response contained GraphQL errors.
+     */
+    private CompletableFuture<UnitList> fetchUnitPageAsync(String after) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("after", after);
+        variables.put("first", pageSize);
+        variables.put("search", "");
         
-        System.out.println("===== UNIT LIST FETCH COMPLETE =====\n");
+        return graphQLClient.executeAsync("UnitList", variables, "units", UnitList.class).thenApply(graphQLResponse -> {
+            // Check for errors
+            if (graphQLResponse.hasErrors()) {
+                System.err.println("GraphQL errors: " + graphQLResponse.getErrors());
+                return null;
+            }
+            
+            UnitList units = graphQLResponse.getData();
+            return units != null ? units : new UnitList(null, null, null, false);
+        });
+    }
+
+    // Accumulated state of one unit list walk; pages complete one after another, never concurrently
+    private static final class UnitListWalk {
+        final List<Unit> allUnits = new ArrayList<>();
+        final Set<String> seenCursors = new HashSet<>();
+        int pageCount;
     }
 
-    public JsonNode getSelectedUnit() {
-        return selectedUnit;
+    public UnitDetail getSelectedUnit() {
+        return stateStore.current().selectedUnit();
     }
 
-    public void selectUnit(JsonNode unit) throws IOException {
+    public void selectUnit(Unit unit) throws IOException {
         System.out.println("\n===== SELECTING UNIT =====");
         
         try {
@@ -258,8 +196,8 @@ public class UnitService {
                 throw new IOException("Cannot select null unit");
             }
             
-            String serialNumber = unit.path("serialNumber").asText();
-            String name = unit.path("name").asText("Unnamed Unit");
+            String serialNumber = unit.serialNumber();
+            String name = unit.name() != null ? unit.name() : "Unnamed Unit";
             
             System.out.println("Selecting unit: " + name + " (Serial: " + serialNumber + ")");
             
@@ -270,21 +208,22 @@ public class UnitService {
             }
             
             // Store the selected unit
-            this.selectedUnit = unit;
-            
-            // Send the selected unit to clients
-            messagingTemplate.convertAndSend("/topic/selectedUnit", unit);
+            UnitDetail selected = UnitDetail.fromUnit(unit);
+            stateStore.setSelectedUnit(selected);
             
             // Fetch detailed information for this unit
             if (serialNumber != null && !serialNumber.isEmpty()) {
-                JsonNode unitDetail = fetchUnitDetail(serialNumber);
+                UnitDetail unitDetail = fetchUnitDetail(serialNumber);
                 if (unitDetail != null) {
                     // Update the selected unit with more detailed information
-                    this.selectedUnit = unitDetail;
-                    messagingTemplate.convertAndSend("/topic/selectedUnit", unitDetail);
+                    selected = unitDetail;
+                    stateStore.setSelectedUnit(selected);
                 }
             }
             
+            // Send the selected unit to clients once, with details if we got them
+            broadcaster.publish("/topic/selectedUnit", selected);
+            
             System.out.println("Unit selected successfully: " + name);
         } catch (Exception e) {
             System.err.println("Error selecting unit: " + e.getMessage());
@@ -300,7 +239,8 @@ public class UnitService {
      * and selects that unit if it exists in the list.
      */
     private void selectConfiguredUnit() {
-        if (unitListData == null || !unitListData.path("units").isArray()) {
+        UnitList unitListData = stateStore.current().unitList();
+        if (unitListData == null) {
             return;
         }
         
@@ -313,10 +253,9 @@ public class UnitService {
         System.out.println("Looking for configured unit ID: " + configUnitId);
         
         // Look for the configured unit in the list
-        JsonNode units = unitListData.path("units");
-        for (JsonNode unit : units) {
-            String id = unit.path("id").asText();
-            if (configUnitId.equals(id)) {
+        List<Unit> units = unitListData.units();
+        for (Unit unit : units) {
+            if (configUnitId.equals(unit.id())) {
                 try {
                     selectUnit(unit);
                     return;
@@ -328,7 +267,7 @@ public class UnitService {
         
         // If we didn't find the configured unit, select the first one
         try {
-            if (units.size() > 0) {
+            if (!units.isEmpty()) {
                 System.out.println("Configured unit not found, selecting first unit instead");
                 selectUnit(units.get(0));
             }
@@ -337,341 +276,55 @@ public class UnitService {
         }
     }
 
-    public JsonNode fetchUnitDetail(String serialNumber) throws IOException {
-        System.out.println("\n===== FETCHING UNIT DETAILS FOR " + serialNumber + " =====");
-        
+    public UnitDetail fetchUnitDetail(String serialNumber) throws IOException {
         try {
-            // Make sure we have a valid auth token by refreshing the login
-            authService.login();
-            String token = authService.getAuthToken();
-            if (token == null || token.isEmpty()) {
-                throw new IOException("Authentication required");
-            }
-            
-            // Create the HTTP client
-            try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-                HttpPost httpPost = new HttpPost("https://graphql.acs.prod.aseko.cloud/graphql");
-                
-                // Set headers
-                httpPost.setHeader("Connection", "keep-alive");
-                httpPost.setHeader("Origin", "https://aseko.cloud");
-                httpPost.setHeader("Referer", "https://aseko.cloud/");
-                httpPost.setHeader("Sec-Fetch-Dest", "empty");
-                httpPost.setHeader("Sec-Fetch-Mode", "cors");
-                httpPost.setHeader("Sec-Fetch-Site", "same-site");
-                httpPost.setHeader("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/133.0.0.0 Safari/537.36");
-                httpPost.setHeader("accept", "*/*");
-                httpPost.setHeader("accept-language", "en");
-                httpPost.setHeader("authorization", "Bearer " + token);
-                httpPost.setHeader("content-type", "application/json");
-                httpPost.setHeader("sec-ch-ua", "\"Not(A:Brand\";v=\"99\", \"Google Chrome\";v=\"133\", \"Chromium\";v=\"133\"");
-                httpPost.setHeader("sec-ch-ua-mobile", "?0");
-                httpPost.setHeader("sec-ch-ua-platform", "\"macOS\"");
-                httpPost.setHeader("x-app-name", "pool-live");
-                httpPost.setHeader("x-app-version", "4.2.0");
-                httpPost.setHeader("x-mode", "production");
-                
-                // Create the request payload PROPERLY with no escaping issues
-                ObjectNode requestPayload = objectMapper.createObjectNode();
-                requestPayload.put("operationName", "UnitDetailStatusQuery");
-                
-                // Set variables
-                ObjectNode variables = objectMapper.createObjectNode();
-                variables.put("sn", serialNumber);
-                requestPayload.set("variables", variables);
-                
-                // Define the GraphQL query with proper Java escaping
-                // Let Jackson handle the JSON escaping
-                String query = "fragment StatusValueFragment on StatusValue {\n" +
-                        "  __typename\n" +
-                        "  id\n" +
-                        "  type\n" +
-                        "  backgroundColor\n" +
-                        "  textColor\n" +
-                        "  topLeft\n" +
-                        "  topRight\n" +
-                        "  center {\n" +
-                        "    __typename\n" +
-                        "    ... on StringValue {\n" +
-                        "      value\n" +
-                        "      iconName\n" +
-                        "      __typename\n" +
-                        "    }\n" +
-                        "    ... on UpcomingFiltrationPeriodValue {\n" +
-                        "      __typename\n" +
-                        "      configuration {\n" +
-                        "        __typename\n" +
-                        "        name\n" +
-                        "        speed\n" +
-                        "        start\n" +
-                        "        end\n" +
-                        "        overrideIntervalText\n" +
-                        "        poolFlow\n" +
-                        "      }\n" +
-                        "      isNext\n" +
-                        "    }\n" +
-                        "  }\n" +
-                        "  bottomRight\n" +
-                        "  bottomLeft {\n" +
-                        "    __typename\n" +
-                        "    prefix\n" +
-                        "    suffix\n" +
-                        "    style\n" +
-                        "  }\n" +
-                        "}\n" +
-                        "\n" +
-                        "fragment BackwashStatusFragment on BackwashStatus {\n" +
-                        "  __typename\n" +
-                        "  id\n" +
-                        "  running\n" +
-                        "  duration\n" +
-                        "  elapsed\n" +
-                        "  configuration {\n" +
-                        "    __typename\n" +
-                        "    oncePerXDays\n" +
-                        "    start\n" +
-                        "    takes\n" +
-                        "  }\n" +
-                        "}\n" +
-                        "\n" +
-                        "fragment StatusMessageFragment on StatusMessage {\n" +
-                        "  __typename\n" +
-                        "  type\n" +
-                        "  severity\n" +
-                        "  message\n" +
-                        "  detail\n" +
-                        "}\n" +
-                        "\n" +
-                        "query UnitDetailStatusQuery($sn: String!) {\n" +
-                        "  unitBySerialNumber(serialNumber: $sn) {\n" +
-                        "    __typename\n" +
-                        "    ... on UnitNotFoundError {\n" +
-                        "      serialNumber\n" +
-                        "      __typename\n" +
-                        "    }\n" +
-                        "    ... on UnitAccessDeniedError {\n" +
-                        "      serialNumber\n" +
-                        "      __typename\n" +
-                        "    }\n" +
-                        "    ... on UnitNeverConnected {\n" +
-                        "      serialNumber\n" +
-                        "      name\n" +
-                        "      note\n" +
-                        "      statusMessages {\n" +
-                        "        __typename\n" +
-                        "        type\n" +
-                        "        message\n" +
-                        "        severity\n" +
-                        "        detail\n" +
-                        "      }\n" +
-                        "      __typename\n" +
-                        "    }\n" +
-                        "    ... on Unit {\n" +
-                        "      serialNumber\n" +
-                        "      name\n" +
-                        "      note\n" +
-                        "      statusMessages {\n" +
-                        "        __typename\n" +
-                        "        type\n" +
-                        "        message\n" +
-                        "        severity\n" +
-                        "        detail\n" +
-                        "      }\n" +
-                        "      offlineFor\n" +
-                        "      statusValues {\n" +
-                        "        __typename\n" +
-                        "        primary {\n" +
-                        "          ...StatusValueFragment\n" +
-                        "          __typename\n" +
-                        "        }\n" +
-                        "        secondary {\n" +
-                        "          ...StatusValueFragment\n" +
-                        "          __typename\n" +
-                        "        }\n" +
-                        "      }\n" +
-                        "      statusMessages {\n" +
-                        "        ...StatusMessageFragment\n" +
-                        "        __typename\n" +
-                        "      }\n" +
-                        "      backwash {\n" +
-                        "        ...BackwashStatusFragment\n" +
-                        "        __typename\n" +
-                        "      }\n" +
-                        "      waterFilling {\n" +
-                        "        __typename\n" +
-                        "        id\n" +
-                        "        waterLevel\n" +
-                        "        totalTime\n" +
-                        "        totalLiters\n" +
-                        "        totalTimeFromLastReset\n" +
-                        "        totalLitersFromLastReset\n" +
-                        "        lastReset\n" +
-                        "        litersPerMinute\n" +
-                        "        configuration {\n" +
-                        "          __typename\n" +
-                        "          levelHigh\n" +
-                        "          levelLow\n" +
-                        "          levelMax\n" +
-                        "          levelMin\n" +
-                        "          maxFillingTime\n" +
-                        "          enabled\n" +
-                        "        }\n" +
-                        "      }\n" +
-                        "      __typename\n" +
-                        "    }\n" +
-                        "  }\n" +
-                        "}";
-                
-                requestPayload.put("query", query);
-                
-                // Convert to JSON string with proper escaping handled by Jackson
-                String jsonPayload = objectMapper.writeValueAsString(requestPayload);
-                System.out.println("Sending properly formatted request");
-                
-                // Create the request entity
-                StringEntity entity = new StringEntity(jsonPayload, ContentType.APPLICATION_JSON);
-                httpPost.setEntity(entity);
-                
-                // Execute the request
-                try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                    
-                    System.out.println("Unit detail query response status: " + statusCode);
-                    
-                    if (statusCode == 200) {
-                        JsonNode jsonResponse = objectMapper.readTree(responseBody);
-                        
-                        // Check for errors
-                        JsonNode errors = jsonResponse.path("errors");
-                        if (errors.isArray() && errors.size() > 0) {
-                            System.err.println("GraphQL errors: " + errors);
-                            return null;
-                        }
-                        
-                        // Extract the unit detail data
-                        JsonNode unitDetail = jsonResponse.path("data").path("unitBySerialNumber");
-                        
-                        if (unitDetail != null) {
-                            String typename = unitDetail.path("__typename").asText();
-                            if ("UnitNotFoundError".equals(typename) || "UnitAccessDeniedError".equals(typename)) {
-                                System.err.println("Error fetching unit: " + typename);
-                                return null;
-                            }
-                            
-                            System.out.println("Successfully fetched details for unit: " + serialNumber);
-                            
-                            // Send to connected clients
-                            messagingTemplate.convertAndSend("/topic/unitDetail", unitDetail);
-                            
-                            return unitDetail;
-                        }
-                    } else {
-                        System.err.println("Unit detail query failed, status: " + statusCode);
-                        System.err.println("Response: " + responseBody);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error fetching unit details: " + e.getMessage());
-            e.printStackTrace();
-            throw new IOException("Failed to fetch unit details: " + e.getMessage(), e);
+            return fetchUnitDetailAsync(serialNumber).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching unit details", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            System.err.println("Error fetching unit details: " + cause.getMessage());
+            throw new IOException("Failed to fetch unit details: " + cause.getMessage(), cause);
         }
-        
-        System.out.println("===== UNIT DETAIL FETCH COMPLETE =====\n");
-        return null;
     }
 
     /**
-     * Alternative approach for fetching unit details with explicit OPTIONS preflight
+     * Queues the detail query on the batch loader, so details requested for several units at
+     * the same moment go out as one request. Completes with null if the unit was not found.
      */
-    private JsonNode tryAlternativeUnitDetailFetch(String serialNumber, String token) throws IOException {
-        System.out.println("\n===== TRYING ALTERNATIVE UNIT DETAILS FETCH =====");
-        try {
-            CloseableHttpClient httpClient = HttpClients.createDefault();
+    public CompletableFuture<UnitDetail> fetchUnitDetailAsync(String serialNumber) {
+        System.out.println("\n===== FETCHING UNIT DETAILS FOR " + serialNumber + " =====");
+        return batchLoader.load("UnitDetailStatusQuery", Collections.singletonMap("sn", serialNumber),
+                        "unitBySerialNumber", UnitDetail.class)
+                .thenApply(graphQLResponse -> toUnitDetail(serialNumber, graphQLResponse));
+    }
+
+    private UnitDetail toUnitDetail(String serialNumber, JsonResponseDecoder.GraphQLResponse<UnitDetail> graphQLResponse) {
+        // Check for errors
+        if (graphQLResponse.hasErrors()) {
+            System.err.println("GraphQL errors: " + graphQLResponse.getErrors());
+            return null;
+        }
+        
+        // Extract the unit detail data
+        UnitDetail unitDetail = graphQLResponse.getData();
+        
+        if (unitDetail != null) {
+            if (unitDetail.isError()) {
+                System.err.println("Error fetching unit: " + unitDetail.typename());
+                return null;
+            }
             
-            // First send OPTIONS request (preflight)
-            HttpOptions optionsRequest = new HttpOptions("https://graphql.acs.prod.aseko.cloud/graphql");
-            optionsRequest.setHeader("Accept", "*/*");
-            optionsRequest.setHeader("Accept-Language", "en-GB,en;q=0.9,en-US;q=0.8");
-            optionsRequest.setHeader("Access-Control-Request-Headers", "authorization,content-type,x-app-name,x-app-version,x-mode");
-            optionsRequest.setHeader("Access-Control-Request-Method", "POST");
-            optionsRequest.setHeader("Connection", "keep-alive");
-            optionsRequest.setHeader("Origin", "https://aseko.cloud");
-            optionsRequest.setHeader("Referer", "https://aseko.cloud/");
-            optionsRequest.setHeader("Sec-Fetch-Dest", "empty");
-            optionsRequest.setHeader("Sec-Fetch-Mode", "cors");
-            optionsRequest.setHeader("Sec-Fetch-Site", "same-site");
-            optionsRequest.setHeader("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/133.0.0.0 Safari/537.36");
+            System.out.println("Successfully fetched details for unit: " + serialNumber);
             
-            try (CloseableHttpResponse optionsResponse = httpClient.execute(optionsRequest)) {
-                int optionsStatusCode = optionsResponse.getStatusLine().getStatusCode();
-                System.out.println("OPTIONS preflight status: " + optionsStatusCode);
-                
-                // Now send the actual POST request
-                HttpPost httpPost = new HttpPost("https://graphql.acs.prod.aseko.cloud/graphql");
-                httpPost.setHeader("Connection", "keep-alive");
-                httpPost.setHeader("Origin", "https://aseko.cloud");
-                httpPost.setHeader("Referer", "https://aseko.cloud/");
-                httpPost.setHeader("Sec-Fetch-Dest", "empty");
-                httpPost.setHeader("Sec-Fetch-Mode", "cors");
-                httpPost.setHeader("Sec-Fetch-Site", "same-site");
-                httpPost.setHeader("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/133.0.0.0 Safari/537.36");
-                httpPost.setHeader("accept", "*/*");
-                httpPost.setHeader("accept-language", "en");
-                httpPost.setHeader("authorization", "Bearer " + token);
-                httpPost.setHeader("content-type", "application/json");
-                httpPost.setHeader("sec-ch-ua", "\"Not(A:Brand\";v=\"99\", \"Google Chrome\";v=\"133\", \"Chromium\";v=\"133\"");
-                httpPost.setHeader("sec-ch-ua-mobile", "?0");
-                httpPost.setHeader("sec-ch-ua-platform", "\"macOS\"");
-                httpPost.setHeader("x-app-name", "pool-live");
-                httpPost.setHeader("x-app-version", "4.2.0");
-                httpPost.setHeader("x-mode", "production");
-                
-                // Create exact same request body
-                ObjectNode queryBody = objectMapper.createObjectNode();
-                queryBody.put("operationName", "UnitDetail");
-                ObjectNode variables = objectMapper.createObjectNode();
-                variables.put("sn", serialNumber);
-                queryBody.set("variables", variables);
-                queryBody.put("query", "query UnitDetail($sn: String\\u0021) {\\n  unitBySerialNumber(serialNumber: $sn) {\\n    __typename\\n    ... on UnitNotFoundError {\\n      serialNumber\\n      __typename\\n    }\\n    ... on UnitAccessDeniedError {\\n      serialNumber\\n      __typename\\n    }\\n    ... on UnitNeverConnected {\\n      serialNumber\\n      name\\n      note\\n      statusMessages {\\n        __typename\\n        severity\\n        type\\n        message\\n        detail\\n      }\\n      __typename\\n    }\\n    ... on Unit {\\n      serialNumber\\n      name\\n      note\\n      brandName {\\n        __typename\\n        id\\n        primary\\n        secondary\\n      }\\n      statusMessages {\\n        __typename\\n        severity\\n        type\\n        message\\n        detail\\n      }\\n      heating {\\n        __typename\\n        lastReset\\n      }\\n      waterFilling {\\n        __typename\\n        id\\n        waterLevel\\n        lastReset\\n      }\\n      consumables {\\n        __typename\\n        ... on LiquidConsumable {\\n          type\\n          canister {\\n            __typename\\n            id\\n            hasWarning\\n          }\\n          tube {\\n            __typename\\n            id\\n            hasWarning\\n          }\\n          __typename\\n        }\\n        ... on ElectrolyzerConsumable {\\n          type\\n          electrode {\\n            __typename\\n            hasWarning\\n          }\\n          __typename\\n        }\\n      }\\n      notificationConfiguration {\\n        __typename\\n        id\\n        type\\n        name\\n        enabled\\n        lowWarningLevel\\n        highWarningLevel\\n        color\\n        currentValue\\n        suffix\\n        hasWarning\\n        possibleWarningLevels\\n      }\\n      unitModel {\\n        __typename\\n        id\\n        tabs {\\n          hideNotifications\\n          hideConsumables\\n          hideProtocolExport\\n          __typename\\n        }\\n      }\\n      __typename\\n    }\\n  }\\n}");
-                
-                String jsonPayload = objectMapper.writeValueAsString(queryBody);
-                StringEntity entity = new StringEntity(jsonPayload, ContentType.APPLICATION_JSON);
-                httpPost.setEntity(entity);
-                
-                try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                    
-                    System.out.println("Alternative unit detail request status: " + statusCode);
-                    
-                    if (statusCode == 200) {
-                        JsonNode jsonResponse = objectMapper.readTree(responseBody);
-                        JsonNode unitDetail = jsonResponse.path("data").path("unitBySerialNumber");
-                        
-                        if (unitDetail != null) {
-                            String typename = unitDetail.path("__typename").asText();
-                            if ("UnitNotFoundError".equals(typename) || "UnitAccessDeniedError".equals(typename)) {
-                                System.err.println("Error fetching unit: " + typename);
-                                return null;
-                            }
-                            
-                            System.out.println("Successfully fetched unit details using alternative method");
-                            messagingTemplate.convertAndSend("/topic/unitDetail", unitDetail);
-                            return unitDetail;
-                        }
-                    } else {
-                        System.err.println("Alternative unit detail request failed: " + statusCode);
-                        System.err.println("Response: " + responseBody);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Error in alternative unit fetch: " + e.getMessage());
+            // Send to connected clients
+            broadcaster.publish("/topic/unitDetail", serialNumber, unitDetail);
+            
+            return unitDetail;
         }
         
-        System.out.println("===== ALTERNATIVE FETCH COMPLETED =====\n");
+        System.out.println("===== UNIT DETAIL FETCH COMPLETE =====\n");
         return null;
     }
 } 
\ No newline at end of file
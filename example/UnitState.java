@@ -0,0 +1,8 @@
+package com.example.asekoflowmonitor.model;
+
+/**
+ * Latest subscription frame of one unit. {@code sequence} counts unit frames across all units,
+ * so a reader can tell which of two states arrived later.
+ */
+public record UnitState(Unit unit, long receivedAt, long sequence) {
+}
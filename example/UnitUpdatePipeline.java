@@ -0,0 +1,225 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.Unit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring buffer between the subscription socket and everything that consumes unit updates.
+ * The socket reader thread is the only producer. It copies each parsed frame into a
+ * preallocated slot and publishes the slot's sequence. A single consumer thread then runs
+ * every handler over the slot in registration order. Neither side takes a lock; they
+ * coordinate only through the published and consumed sequence counters.
+ *
+ * <p>When the ring is full the producer waits for the consumer instead of dropping updates,
+ * so history never has gaps. Handlers must not keep the {@link UnitUpdate} itself because its
+ * slot is reused; keeping the {@link Unit} is fine.
+ *
+ * <p>On shutdown the pipeline stops accepting updates, lets the consumer drain what is already
+ * in the ring and waits for it to finish. The history stores it feeds are declared as
+ * dependencies so Spring closes them only after that.
+ */
+@Component
+@DependsOn({"measurementStore", "measurementRollup"})
+public class UnitUpdatePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(UnitUpdatePipeline.class);
+
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = 1_000_000L;
+
+    private final UnitUpdate[] ring;
+    private final int mask;
+    private final AtomicLong publishedSequence = new AtomicLong(-1);
+    private final AtomicLong consumedSequence = new AtomicLong(-1);
+    private final CopyOnWriteArrayList<UnitUpdateHandler> handlers = new CopyOnWriteArrayList<>();
+    private final Thread consumerThread;
+    // A failing handler fails for every update of a unit; log it once per interval per unit
+    private final LogSampler handlerErrors = new LogSampler(10, TimeUnit.SECONDS);
+    private volatile boolean consumerParked;
+    private volatile boolean running = true;
+    private volatile boolean accepting = true;
+
+    @Value("${aseko.pipeline.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMs = 5000;
+
+    // Producer-only state, touched by the socket reader thread alone
+    private long nextSequence = 0;
+    private volatile long producerStalls = 0;
+
+    @Autowired
+    public UnitUpdatePipeline(@Value("${aseko.pipeline.ring-size:1024}") int ringSize, AsekoMetrics metrics) {
+        int capacity = Integer.highestOneBit(Math.max(2, ringSize - 1)) << 1;
+        this.ring = new UnitUpdate[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new UnitUpdate();
+        }
+        this.mask = capacity - 1;
+        this.consumerThread = new Thread(this::consume, "unit-update-pipeline");
+        this.consumerThread.setDaemon(true);
+        metrics.gauge("aseko.pipeline.backlog", "Unit updates published but not yet handled",
+                this, UnitUpdatePipeline::getBacklog);
+        metrics.functionCounter("aseko.pipeline.producer.stalls", "Times the socket thread waited for a full ring",
+                this, UnitUpdatePipeline::getProducerStalls);
+    }
+
+    @PostConstruct
+    public void start() {
+        consumerThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        accepting = false;
+        running = false;
+        LockSupport.unpark(consumerThread);
+        try {
+            consumerThread.join(Math.max(1, shutdownTimeoutMs));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (consumerThread.isAlive()) {
+            log.warn("Update pipeline did not drain within {} ms, backlog={}", shutdownTimeoutMs, getBacklog());
+        }
+    }
+
+    /**
+     * Adds a handler behind the ones already registered. Handlers run on the pipeline thread.
+     */
+    public void addHandler(UnitUpdateHandler handler) {
+        handlers.addIfAbsent(handler);
+    }
+
+    /**
+     * Publishes one update. Must only be called from the single producer thread. Updates without
+     * a unit id are dropped here, so no handler ever sees one.
+     */
+    public void publish(String unitId, long receivedAt, Unit unit) {
+        if (!accepting || unitId == null || unitId.isEmpty()) {
+            return;
+        }
+        long sequence = nextSequence;
+        long wrapPoint = sequence - ring.length;
+        if (consumedSequence.get() < wrapPoint) {
+            producerStalls++;
+            int spins = 0;
+            while (consumedSequence.get() < wrapPoint) {
+                if (!running) {
+                    return;
+                }
+                if (spins++ < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS / 20);
+                }
+            }
+        }
+
+        UnitUpdate slot = ring[(int) sequence & mask];
+        slot.unitId = unitId;
+        slot.receivedAt = receivedAt;
+        slot.unit = unit;
+        nextSequence = sequence + 1;
+        // Release store: the slot's fields are visible before the consumer sees the sequence
+        publishedSequence.lazySet(sequence);
+
+        if (consumerParked) {
+            LockSupport.unpark(consumerThread);
+        }
+    }
+
+    /**
+     * Number of times the producer had to wait for a full ring, for diagnostics.
+     */
+    public long getProducerStalls() {
+        return producerStalls;
+    }
+
+    /**
+     * Updates published but not yet handled.
+     */
+    public long getBacklog() {
+        return publishedSequence.get() - consumedSequence.get();
+    }
+
+    private void consume() {
+        long next = 0;
+        int idleSpins = 0;
+        while (true) {
+            long available = publishedSequence.get();
+            if (available < next) {
+                if (!running) {
+                    // Stopped and drained
+                    return;
+                }
+                if (idleSpins++ < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    consumerParked = true;
+                    // Re-check after announcing the park; a wake-up lost to a racing publish
+                    // still costs at most one park interval
+                    if (publishedSequence.get() < next) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    consumerParked = false;
+                }
+                continue;
+            }
+            idleSpins = 0;
+
+            for (long sequence = next; sequence <= available; sequence++) {
+                UnitUpdate update = ring[(int) sequence & mask];
+                for (UnitUpdateHandler handler : handlers) {
+                    try {
+                        handler.onUpdate(update);
+                    } catch (Exception e) {
+                        long suppressed = handlerErrors.tryAcquire(update.unitId);
+                        if (suppressed >= 0) {
+                            log.warn("Unit update handler failed unit={}: {} (suppressed={})", update.unitId, e.toString(), suppressed);
+                        }
+                    }
+                }
+                update.unit = null;
+            }
+            consumedSequence.lazySet(available);
+            next = available + 1;
+        }
+    }
+
+    /**
+     * One slot of the ring. Read it inside {@link UnitUpdateHandler#onUpdate} only.
+     */
+    public static final class UnitUpdate {
+        private String unitId;
+        private long receivedAt;
+        private Unit unit;
+
+        public String unitId() {
+            return unitId;
+        }
+
+        public long receivedAt() {
+            return receivedAt;
+        }
+
+        public Unit unit() {
+            return unit;
+        }
+    }
+
+    @FunctionalInterface
+    public interface UnitUpdateHandler {
+        void onUpdate(UnitUpdate update);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.Unit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the recorded payloads under fixtures/ from the benchmark classpath.
+ */
+final class BenchmarkFixtures {
+
+    static final String UNIT_UPDATES = "fixtures/unit-updates.jsonl";
+    static final String UNIT_DETAIL_STATUS_QUERY = "fixtures/unit-detail-status-query.json";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * UnitUpdates data frames exactly as they arrived on the socket, one per line.
+     */
+    static List<String> unitUpdateFrames() {
+        List<String> frames = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(UNIT_UPDATES), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    frames.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + UNIT_UPDATES, e);
+        }
+        return frames;
+    }
+
+    /**
+     * The units of {@link #unitUpdateFrames()}, bound as the subscription client binds them.
+     */
+    static Unit[] unitUpdates(ObjectMapper objectMapper) {
+        List<String> frames = unitUpdateFrames();
+        Unit[] units = new Unit[frames.size()];
+        try {
+            for (int i = 0; i < units.length; i++) {
+                units[i] = objectMapper.treeToValue(
+                        objectMapper.readTree(frames.get(i)).path("payload").path("data").path("unit"), Unit.class);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Bad frame in " + UNIT_UPDATES, e);
+        }
+        return units;
+    }
+
+    /**
+     * Response body of one UnitDetailStatusQuery.
+     */
+    static byte[] unitDetailStatusResponse() {
+        try (InputStream in = open(UNIT_DETAIL_STATUS_QUERY)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + UNIT_DETAIL_STATUS_QUERY, e);
+        }
+    }
+
+    private static InputStream open(String resource) {
+        InputStream in = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("Missing benchmark fixture " + resource);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.Unit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One broadcast of a recorded unit update through {@link StompBroadcaster}, including the
+ * convertAndSend serialization with the Jackson converter the app uses. The channel discards
+ * the message after conversion, so broker and client I/O are left out. Rate limiting is off, so
+ * every call publishes. {@link #publishDelta} goes through the snapshot/patch envelopes of
+ * /topic/poolData; {@link #publishFull} serializes the whole unit on a plain topic. Both flush
+ * on the benchmark thread, which the broadcaster thread normally does. {@link #enqueue} is only
+ * the hand-off that runs on the pipeline thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class BroadcastBenchmark {
+
+    private static final String DELTA_TOPIC = "/topic/poolData";
+    private static final String PLAIN_TOPIC = "/topic/unit";
+
+    private StompBroadcaster broadcaster;
+    private Unit[] units;
+    private int next;
+    // The broadcaster thread may flush too, so the count is updated from two threads
+    private final LongAdder sentBytes = new LongAdder();
+
+    @Setup
+    public void setUp() {
+        units = BenchmarkFixtures.unitUpdates(new ObjectMapper());
+
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> {
+            sentBytes.add(((byte[]) message.getPayload()).length);
+            return true;
+        });
+        template.setMessageConverter(new MappingJackson2MessageConverter());
+        broadcaster = new StompBroadcaster(template, 0, "", DELTA_TOPIC, 50, 60,
+                new AsekoMetrics(new SimpleMeterRegistry()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        broadcaster.shutdown();
+    }
+
+    @Benchmark
+    public long publishDelta() {
+        Unit unit = nextUnit();
+        broadcaster.publish(DELTA_TOPIC, unit.id(), unit);
+        broadcaster.flushNow(DELTA_TOPIC);
+        return sentBytes.sum();
+    }
+
+    @Benchmark
+    public long publishFull() {
+        Unit unit = nextUnit();
+        broadcaster.publish(PLAIN_TOPIC, unit.id(), unit);
+        broadcaster.flushNow(PLAIN_TOPIC);
+        return sentBytes.sum();
+    }
+
+    @Benchmark
+    public Unit enqueue() {
+        Unit unit = nextUnit();
+        broadcaster.publish(DELTA_TOPIC, unit.id(), unit);
+        return unit;
+    }
+
+    private Unit nextUnit() {
+        Unit unit = units[next];
+        next = next + 1 == units.length ? 0 : next + 1;
+        return unit;
+    }
+}
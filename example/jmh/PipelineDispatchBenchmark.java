@@ -0,0 +1,89 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.Unit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hand-off of decoded updates from the socket reader thread to the {@link UnitUpdatePipeline}
+ * consumer, as DirectWebSocketService does for every frame. The consumer records each unit in
+ * a {@link MonitorStateStore}, the same per-unit write the live pipeline performs.
+ *
+ * <p>{@link #publish} measures producer throughput with the ring absorbing bursts.
+ * {@link #publishAndAwait} waits until the consumer has handled the update, so its sample-time
+ * percentiles are the hand-off latency. The pipeline allows one producer, hence one thread.
+ */
+@State(Scope.Thread)
+@Threads(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class PipelineDispatchBenchmark {
+
+    @Param({"1024"})
+    private int ringSize;
+
+    private UnitUpdatePipeline pipeline;
+    private final AtomicLong handled = new AtomicLong();
+    private Unit[] units;
+    private int next;
+    private long published;
+
+    @Setup
+    public void setUp() {
+        units = BenchmarkFixtures.unitUpdates(new ObjectMapper());
+
+        MonitorStateStore stateStore = new MonitorStateStore();
+        pipeline = new UnitUpdatePipeline(ringSize, new AsekoMetrics(new SimpleMeterRegistry()));
+        pipeline.addHandler(update -> stateStore.recordUnit(update.unitId(), update.unit(), update.receivedAt()));
+        pipeline.addHandler(update -> handled.lazySet(handled.get() + 1));
+        pipeline.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void publish() {
+        Unit unit = nextUnit();
+        pipeline.publish(unit.id(), System.currentTimeMillis(), unit);
+        published++;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long publishAndAwait() {
+        publish();
+        while (handled.get() < published) {
+            Thread.onSpinWait();
+        }
+        return published;
+    }
+
+    private Unit nextUnit() {
+        Unit unit = units[next];
+        next = next + 1 == units.length ? 0 : next + 1;
+        return unit;
+    }
+}
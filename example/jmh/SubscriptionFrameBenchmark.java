@@ -0,0 +1,76 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.Unit;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode and dispatch of one recorded UnitUpdates frame on the socket reader thread, through
+ * {@link GraphQLSubscriptionClient#handleMessage}. {@link #treeDecode} is the readTree plus
+ * treeToValue decode the services used before, kept as the baseline to compare against.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SubscriptionFrameBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private GraphQLSubscriptionClient subscriptionClient;
+    private String[] frames;
+    private int next;
+    private Unit lastDispatched;
+
+    @Setup
+    public void setUp() {
+        List<String> recorded = BenchmarkFixtures.unitUpdateFrames();
+        frames = recorded.toArray(new String[0]);
+
+        // Only the operation registry and metrics are used on the data frame path; no socket is opened
+        subscriptionClient = new GraphQLSubscriptionClient(null, null, null, new GraphQLOperationRegistry(), null,
+                new AsekoMetrics(new SimpleMeterRegistry()));
+        for (String frame : frames) {
+            try {
+                String unitId = objectMapper.readTree(frame).path("payload").path("data").path("unit").path("id").asText();
+                subscriptionClient.subscribe(unitId, (id, unit) -> lastDispatched = unit);
+            } catch (IOException e) {
+                throw new IllegalStateException("Bad fixture frame: " + frame, e);
+            }
+        }
+    }
+
+    @Benchmark
+    public Unit decodeAndDispatch() {
+        subscriptionClient.handleMessage(nextFrame());
+        return lastDispatched;
+    }
+
+    @Benchmark
+    public Unit treeDecode() throws IOException {
+        JsonNode message = objectMapper.readTree(nextFrame());
+        return objectMapper.treeToValue(message.path("payload").path("data").path("unit"), Unit.class);
+    }
+
+    private String nextFrame() {
+        String frame = frames[next];
+        next = next + 1 == frames.length ? 0 : next + 1;
+        return frame;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.UnitDetail;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU side of fetchUnitDetail: building the UnitDetailStatusQuery request body the way the
+ * batch loader and {@link GraphQLClient} do, and decoding a recorded response into a
+ * {@link UnitDetail}. The HTTP round trip itself is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class UnitDetailRequestBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private GraphQLOperation operation;
+    private byte[] response;
+    private String serialNumber = "110040123";
+
+    @Setup
+    public void setUp() {
+        operation = new GraphQLOperationRegistry().get("UnitDetailStatusQuery");
+        response = BenchmarkFixtures.unitDetailStatusResponse();
+    }
+
+    @Benchmark
+    public byte[] buildPersistedRequest() throws IOException {
+        return operation.persistedBody(objectMapper.writeValueAsBytes(Collections.singletonMap("sn", serialNumber)));
+    }
+
+    @Benchmark
+    public byte[] buildRegisteringRequest() throws IOException {
+        return operation.registeringBody(objectMapper.writeValueAsBytes(Collections.singletonMap("sn", serialNumber)));
+    }
+
+    @Benchmark
+    public UnitDetail decodeResponse() throws IOException {
+        return JsonResponseDecoder.readGraphQL(objectMapper, response, "unitBySerialNumber", UnitDetail.class).getData();
+    }
+}
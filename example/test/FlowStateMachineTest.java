@@ -0,0 +1,95 @@
+package com.example.asekoflowmonitor.service;
+
+import com.example.asekoflowmonitor.model.FlowTransition;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlowStateMachineTest {
+
+    private static final String UNIT = "unit-1";
+
+    // On at 0.5 or above, off at 0 or below, 3 s dwell
+    private final FlowStateMachine machine = new FlowStateMachine(0.5, 0, 3000);
+
+    @Test
+    void reportsTheFirstReadingAsTheInitialState() {
+        FlowTransition transition = machine.observe(UNIT, 1.2, 1000);
+
+        assertNotNull(transition);
+        assertTrue(transition.initial());
+        assertTrue(transition.flowing());
+        assertEquals(1000L, transition.changedAt());
+        assertEquals(0L, transition.previousDurationMillis());
+        assertNull(machine.observe(UNIT, 1.1, 2000), "same state is not reported again");
+    }
+
+    @Test
+    void holdsTheStateInsideTheHysteresisBand() {
+        machine.observe(UNIT, 1.0, 0);
+        // Below the on threshold but above the off threshold: still flowing
+        assertNull(machine.observe(UNIT, 0.3, 10_000));
+        assertNull(machine.observe(UNIT, 0.3, 20_000));
+
+        machine.observe("unit-2", 0.0, 0);
+        // Above the off threshold but below the on threshold: still stopped
+        assertNull(machine.observe("unit-2", 0.3, 10_000));
+        assertNull(machine.observe("unit-2", 0.3, 20_000));
+    }
+
+    @Test
+    void confirmsAChangeOnlyAfterTheMinimumDwell() {
+        machine.observe(UNIT, 1.0, 0);
+
+        assertNull(machine.observe(UNIT, 0.0, 1000));
+        assertNull(machine.observe(UNIT, 0.0, 3999));
+        FlowTransition transition = machine.observe(UNIT, 0.0, 4000);
+
+        assertNotNull(transition);
+        assertFalse(transition.initial());
+        assertFalse(transition.flowing());
+        assertEquals(1000L, transition.changedAt(), "dated to the first disagreeing reading");
+        assertEquals(4000L, transition.confirmedAt());
+        assertEquals(1000L, transition.previousDurationMillis());
+    }
+
+    @Test
+    void restartsTheDwellWhenAReadingAgreesWithTheCurrentState() {
+        machine.observe(UNIT, 1.0, 0);
+
+        assertNull(machine.observe(UNIT, 0.0, 1000));
+        // A single flowing reading cancels the pending stop
+        assertNull(machine.observe(UNIT, 0.8, 2000));
+        assertNull(machine.observe(UNIT, 0.0, 4500));
+        assertNull(machine.observe(UNIT, 0.0, 7000));
+        FlowTransition transition = machine.observe(UNIT, 0.0, 7500);
+
+        assertNotNull(transition);
+        assertEquals(4500L, transition.changedAt());
+    }
+
+    @Test
+    void forgetsUnitsThatAreNoLongerMonitored() {
+        machine.observe(UNIT, 1.0, 0);
+        machine.observe("unit-2", 0.0, 0);
+        assertTrue(machine.anyFlowing());
+
+        assertTrue(machine.forget(UNIT));
+        assertFalse(machine.forget(UNIT), "nothing left to forget");
+        assertFalse(machine.anyFlowing());
+
+        FlowTransition transition = machine.observe(UNIT, 1.0, 5000);
+        assertNotNull(transition);
+        assertTrue(transition.initial(), "a returning unit starts over");
+    }
+
+    @Test
+    void rejectsAnOffThresholdAtOrAboveTheOnThreshold() {
+        assertThrows(IllegalArgumentException.class, () -> new FlowStateMachine(0.5, 0.5, 0));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.asekoflowmonitor.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GorillaCodecTest {
+
+    @Test
+    void roundTripsRegularSlowlyChangingSamples() {
+        long[] timestamps = new long[500];
+        double[] values = new double[500];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = 1_700_000_000_000L + i * 1000L;
+            values[i] = 7.2 + (i / 50) * 0.01;
+        }
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    void roundTripsIrregularDeltasAndAwkwardValues() {
+        // Covers every delta-of-delta width, a zero delta and values whose XOR spans all 64 bits
+        long[] timestamps = {
+                0L, 1000L, 1000L, 1999L, 2100L, 6000L, 6001L, 1_000_000L, 1_000_001L,
+                5_000_000_000L, 5_000_000_100L, 36_536_000_100L
+        };
+        double[] values = {
+                0.0, -0.0, 1.0, 1.0, -1.0, Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE,
+                Double.MAX_VALUE, -Double.MAX_VALUE, 0.1 + 0.2, 7.25
+        };
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    void roundTripsRandomWalks() {
+        SplittableRandom random = new SplittableRandom(7);
+        long[] timestamps = new long[2000];
+        double[] values = new double[2000];
+        long timestamp = 1_700_000_000_000L;
+        double value = 30.0;
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamp += random.nextLong(0, 120_000);
+            value += random.nextDouble(-0.5, 0.5);
+            timestamps[i] = timestamp;
+            values[i] = value;
+        }
+        assertRoundTrip(timestamps, values);
+    }
+
+    @Test
+    void decodesOnlyTheRequestedRange() {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        for (int i = 0; i < 10; i++) {
+            encoder.append(i * 100L, i);
+        }
+
+        SeriesData out = new SeriesData();
+        new GorillaCodec.Decoder(ByteBuffer.wrap(encoder.toByteArray()), 0).decodeInto(encoder.count(), 250, 600, out);
+
+        assertEquals(4, out.size());
+        assertEquals(300L, out.timestampAt(0));
+        assertEquals(600L, out.timestampAt(3));
+        assertEquals(6.0, out.valueAt(3));
+    }
+
+    @Test
+    void decodesAtAnOffsetIntoTheBuffer() {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        encoder.append(10L, 1.5);
+        encoder.append(20L, 2.5);
+        byte[] payload = encoder.toByteArray();
+        ByteBuffer buffer = ByteBuffer.allocate(payload.length + 24);
+        buffer.put(24, payload);
+
+        SeriesData out = new SeriesData();
+        new GorillaCodec.Decoder(buffer, 24).decodeInto(2, Long.MIN_VALUE, Long.MAX_VALUE, out);
+
+        assertEquals(2, out.size());
+        assertEquals(20L, out.timestampAt(1));
+        assertEquals(2.5, out.valueAt(1));
+    }
+
+    private static void assertRoundTrip(long[] timestamps, double[] values) {
+        GorillaCodec.Encoder encoder = new GorillaCodec.Encoder();
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        assertEquals(timestamps.length, encoder.count());
+
+        SeriesData out = new SeriesData();
+        new GorillaCodec.Decoder(ByteBuffer.wrap(encoder.toByteArray()), 0)
+                .decodeInto(encoder.count(), Long.MIN_VALUE, Long.MAX_VALUE, out);
+
+        assertEquals(timestamps.length, out.size());
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(timestamps[i], out.timestampAt(i), "timestamp " + i);
+            // Bit-exact, so NaN payloads and -0.0 survive too
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(out.valueAt(i)), "value " + i);
+        }
+    }
+}
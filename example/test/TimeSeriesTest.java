@@ -0,0 +1,111 @@
+package com.example.asekoflowmonitor.history;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimeSeriesTest {
+
+    private static final int SAMPLES_PER_BLOCK = 4;
+    // Mirrors the file layout documented on TimeSeries
+    private static final int FILE_HEADER_BYTES = 16;
+    private static final int BLOCK_HEADER_BYTES = 24;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopensSealedAndFlushedBlocks() throws IOException {
+        Path path = directory.resolve("ph.series");
+        try (TimeSeries series = TimeSeries.open(path, SAMPLES_PER_BLOCK)) {
+            appendSamples(series, 0, 10);
+        }
+
+        try (TimeSeries series = TimeSeries.open(path, SAMPLES_PER_BLOCK)) {
+            assertSamples(series, 10);
+            assertEquals(9000L, series.lastTimestamp());
+            assertEquals(SAMPLES_PER_BLOCK, series.countAtMost(2000, 2000), "counts whole overlapping blocks");
+        }
+    }
+
+    @Test
+    void keepsCheckpointedSamplesAfterACrash() throws IOException {
+        Path path = directory.resolve("ph.series");
+        // Never closed, as after a crash; closing would flush the filling block
+        TimeSeries crashed = TimeSeries.open(path, SAMPLES_PER_BLOCK);
+        appendSamples(crashed, 0, 6);
+        crashed.checkpoint();
+        // Appended after the checkpoint, so lost with the process
+        crashed.append(6000L, 6.0);
+
+        try (TimeSeries series = TimeSeries.open(path, SAMPLES_PER_BLOCK)) {
+            assertSamples(series, 6);
+            // Appends continue after the recovered block
+            series.append(6000L, 6.0);
+            assertSamples(series, 7);
+        }
+    }
+
+    @Test
+    void cutsOffATornCheckpointBlock() throws IOException {
+        Path path = directory.resolve("ph.series");
+        TimeSeries crashed = TimeSeries.open(path, SAMPLES_PER_BLOCK);
+        appendSamples(crashed, 0, 6);
+        crashed.checkpoint();
+
+        // Simulate dying mid-rewrite: the checkpointed block's header claims more payload than
+        // the file end covers
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int firstPayload = readInt(channel, FILE_HEADER_BYTES + 20);
+            long tornBlock = FILE_HEADER_BYTES + BLOCK_HEADER_BYTES + firstPayload;
+            writeInt(channel, tornBlock + 20, 1_000);
+        }
+
+        try (TimeSeries series = TimeSeries.open(path, SAMPLES_PER_BLOCK)) {
+            assertSamples(series, SAMPLES_PER_BLOCK);
+            assertEquals(3000L, series.lastTimestamp());
+            appendSamples(series, SAMPLES_PER_BLOCK, 8);
+        }
+
+        // The cut was persisted, so the torn header is not parsed again
+        try (TimeSeries series = TimeSeries.open(path, SAMPLES_PER_BLOCK)) {
+            assertSamples(series, 8);
+        }
+    }
+
+    private static void appendSamples(TimeSeries series, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            series.append(i * 1000L, i);
+        }
+    }
+
+    private static void assertSamples(TimeSeries series, int expected) {
+        SeriesData data = new SeriesData();
+        series.query(Long.MIN_VALUE, Long.MAX_VALUE, data);
+        assertEquals(expected, data.size());
+        for (int i = 0; i < expected; i++) {
+            assertEquals(i * 1000L, data.timestampAt(i));
+            assertEquals(i, data.valueAt(i));
+        }
+    }
+
+    // MappedByteBuffer defaults to big-endian, so the file is too
+    private static int readInt(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        channel.read(buffer, position);
+        return buffer.getInt(0);
+    }
+
+    private static void writeInt(FileChannel channel, long position, int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(0, value);
+        channel.write(buffer, position);
+    }
+}
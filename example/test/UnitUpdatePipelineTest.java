@@ -0,0 +1,107 @@
+package com.example.asekoflowmonitor.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UnitUpdatePipelineTest {
+
+    private final UnitUpdatePipeline pipeline = new UnitUpdatePipeline(8, new AsekoMetrics(new SimpleMeterRegistry()));
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void runsHandlersInOrderForEveryUpdate() {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        pipeline.addHandler(update -> calls.add("first:" + update.unitId() + "@" + update.receivedAt()));
+        pipeline.addHandler(update -> calls.add("second:" + update.unitId() + "@" + update.receivedAt()));
+        pipeline.start();
+
+        pipeline.publish("unit-1", 1L, null);
+        pipeline.publish("unit-2", 2L, null);
+        pipeline.shutdown();
+
+        assertEquals(List.of("first:unit-1@1", "second:unit-1@1", "first:unit-2@2", "second:unit-2@2"), calls);
+    }
+
+    @Test
+    void drainsEveryPublishedUpdateOnShutdown() {
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+        pipeline.addHandler(update -> {
+            // Slower than the producer, so the ring fills up and the backlog is large at shutdown
+            sleepQuietly(1);
+            handled.add(update.receivedAt());
+        });
+        pipeline.start();
+
+        for (long i = 0; i < 100; i++) {
+            pipeline.publish("unit-1", i, null);
+        }
+        pipeline.shutdown();
+
+        assertEquals(100, handled.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (long) handled.get(i));
+        }
+        assertEquals(0, pipeline.getBacklog());
+    }
+
+    @Test
+    void dropsUpdatesPublishedAfterShutdown() {
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        pipeline.addHandler(update -> handled.add(update.unitId()));
+        pipeline.start();
+        pipeline.shutdown();
+
+        pipeline.publish("unit-1", 1L, null);
+
+        assertEquals(List.of(), handled);
+    }
+
+    @Test
+    void dropsUpdatesWithoutAUnitId() {
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        pipeline.addHandler(update -> handled.add(update.unitId()));
+        pipeline.start();
+
+        pipeline.publish(null, 1L, null);
+        pipeline.publish("", 2L, null);
+        pipeline.publish("unit-1", 3L, null);
+        pipeline.shutdown();
+
+        assertEquals(List.of("unit-1"), handled);
+    }
+
+    @Test
+    void keepsRunningLaterHandlersWhenOneFails() {
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        pipeline.addHandler(update -> {
+            throw new IllegalStateException("broken handler");
+        });
+        pipeline.addHandler(update -> handled.add(update.unitId()));
+        pipeline.start();
+
+        pipeline.publish("unit-1", 1L, null);
+        pipeline.publish("unit-2", 2L, null);
+        pipeline.shutdown();
+
+        assertEquals(List.of("unit-1", "unit-2"), handled);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}